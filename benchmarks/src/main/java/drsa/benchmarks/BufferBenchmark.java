@@ -0,0 +1,66 @@
+package drsa.benchmarks;
+
+import drsa.utils.Buffer;
+import drsa.utils.RollingPattern;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One step of the confusion pattern search: adding a byte to the sliding window and comparing it
+ * with the pattern, with the LinkedList based Buffer and with the packed RollingPattern.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferBenchmark {
+
+    @Param({"1", "2", "3", "4"})
+    public int size;
+
+    private long[] bytes;
+    private int index;
+
+    private Buffer pattern;
+    private Buffer window;
+    private RollingPattern rolling;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        this.bytes = new long[4096];
+        for (int i = 0; i < this.bytes.length; i++)
+            this.bytes[i] = random.nextInt(256);
+
+        int[] pattern = new int[this.size];
+        this.pattern = new Buffer(this.size);
+        this.window = new Buffer(this.size);
+        for (int i = 0; i < this.size; i++) {
+            pattern[i] = random.nextInt(256);
+            this.pattern.add(pattern[i]);
+            // Fill the window, since Buffer.equals() needs a full window
+            this.window.add(random.nextInt(256));
+        }
+        this.rolling = new RollingPattern(pattern);
+    }
+
+    private long next() {
+        this.index = (this.index + 1) & (this.bytes.length - 1);
+        return this.bytes[this.index];
+    }
+
+    @Benchmark
+    public boolean buffer_add_equals() {
+        this.window.add(this.next());
+        return this.pattern.equals(this.window);
+    }
+
+    @Benchmark
+    public boolean rolling_pattern_push() {
+        return this.rolling.push(this.next());
+    }
+}
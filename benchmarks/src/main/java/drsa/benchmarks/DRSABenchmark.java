@@ -0,0 +1,51 @@
+package drsa.benchmarks;
+
+import drsa.DRSA;
+import drsa.PRBG;
+import drsa.PrimeSearch;
+import drsa.ProbablePrimeSearch;
+import drsa.SievePrimeSearch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the drsa.DRSA constructor for several seed sizes (the modulus has about 8 times as many
+ * bits as the seed has bytes), with each prime search engine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DRSABenchmark {
+
+    @Param({"64", "128", "256", "512"})
+    public int seed_size;
+
+    @Param({"sieve", "probable"})
+    public String prime_search;
+
+    private PrimeSearch engine;
+    private byte[][] seeds;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        this.engine = this.prime_search.equals("sieve") ? new SievePrimeSearch() : new ProbablePrimeSearch();
+
+        // Fixed seeds, taken from the generator
+        PRBG prbg = new PRBG("benchmark", "a", 1);
+        prbg.setup();
+        this.seeds = new byte[16][this.seed_size];
+        for (byte[] seed : this.seeds)
+            prbg.next_bytes(seed, 0, seed.length);
+    }
+
+    @Benchmark
+    public DRSA drsa() throws Exception {
+        this.index = (this.index + 1) % this.seeds.length;
+        return new DRSA(this.seeds[this.index], null, this.engine);
+    }
+}
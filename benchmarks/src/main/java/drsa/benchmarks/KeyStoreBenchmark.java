@@ -0,0 +1,88 @@
+package drsa.benchmarks;
+
+import drsa.DRSA;
+import drsa.KeyStoreReader;
+import drsa.KeyStoreWriter;
+import drsa.PRBG;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Loading a private key by name: from a keystore file (drsa.KeyStoreReader, memory mapped hash
+ * index), against reading and decoding its PEM file out of a directory with one pair of PEM files
+ * per key, as rsagen writes them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class KeyStoreBenchmark {
+
+    /**
+     * Number of keys, all with the DER bytes of the same 2048 bit key.
+     */
+    @Param({"10000"})
+    public int keys;
+
+    private Path directory;
+    private KeyStoreReader store;
+    private String[] names;
+    private Random random;
+
+    @Setup
+    public void setup() throws Exception {
+        PRBG prbg = new PRBG("benchmark", "a", 1);
+        prbg.setup();
+        byte[] seed = new byte[DRSA.seed_bytes(2048)];
+        prbg.next_bytes(seed, 0, seed.length);
+        DRSA drsa = new DRSA(seed, 2048);
+        byte[] der = drsa.get_private_key_der();
+        byte[] pem_priv = drsa.get_private_key_pem().getBytes(StandardCharsets.US_ASCII);
+        byte[] pem_pub = drsa.get_public_key_pem().getBytes(StandardCharsets.US_ASCII);
+
+        this.directory = Files.createTempDirectory("keystore-benchmark");
+        KeyStoreWriter writer = new KeyStoreWriter(this.directory.resolve("keys.ks"));
+        this.names = new String[this.keys];
+        for (int i = 0; i < this.keys; i++) {
+            this.names[i] = "tenant-" + i;
+            writer.put(this.names[i], der);
+            Files.write(this.directory.resolve(this.names[i] + "_priv_key.pem"), pem_priv);
+            Files.write(this.directory.resolve(this.names[i] + "_pub_key.pem"), pem_pub);
+        }
+        writer.close();
+        this.store = new KeyStoreReader(this.directory.resolve("keys.ks"));
+        this.random = new Random(1);
+    }
+
+    @TearDown
+    public void tear_down() throws IOException {
+        this.store.close();
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public byte[] keystore() throws IOException {
+        return this.store.get_private_key_der(this.names[this.random.nextInt(this.keys)]);
+    }
+
+    @Benchmark
+    public byte[] pem_file() throws IOException {
+        String name = this.names[this.random.nextInt(this.keys)];
+        String pem = new String(Files.readAllBytes(this.directory.resolve(name + "_priv_key.pem")), StandardCharsets.US_ASCII);
+        String base64 = pem.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+        return Base64.getDecoder().decode(base64);
+    }
+}
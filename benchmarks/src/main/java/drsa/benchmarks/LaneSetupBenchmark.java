@@ -0,0 +1,48 @@
+package drsa.benchmarks;
+
+import drsa.PRBG;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PRBG.lane_setup() against PRBG.setup(), for confusion strings of 3 and 4 characters. Run it on
+ * hosts with different SIMD widths (e.g. -jvmArgs -XX:UseAVX=2 against the default on an AVX-512
+ * host) to compare the speedups of the lane search.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class LaneSetupBenchmark {
+
+    @Param({"benchmark"})
+    public String password;
+
+    @Param({"abc", "abcd"})
+    public String confusion_string;
+
+    @Param({"1"})
+    public int iteration_count;
+
+    private PRBG prbg;
+
+    @Setup(Level.Invocation)
+    public void create() throws Exception {
+        this.prbg = new PRBG(this.password, this.confusion_string, this.iteration_count);
+    }
+
+    @Benchmark
+    public long scalar() {
+        this.prbg.setup();
+        return this.prbg.getSeed();
+    }
+
+    @Benchmark
+    public long lanes() {
+        this.prbg.lane_setup();
+        return this.prbg.getSeed();
+    }
+}
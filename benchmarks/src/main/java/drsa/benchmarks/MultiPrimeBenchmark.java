@@ -0,0 +1,71 @@
+package drsa.benchmarks;
+
+import drsa.DRSA;
+import drsa.PRBG;
+import drsa.SievePrimeSearch;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-prime keys against two primes keys of the same size: generation, with the primes searched
+ * concurrently on the common fork-join pool, and CRT private operation (DRSA.rsadp).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MultiPrimeBenchmark {
+
+    /**
+     * Modulus size and number of primes, as bits:primes.
+     */
+    @Param({"2048:2", "2048:3", "4096:2", "4096:3", "4096:4"})
+    public String key;
+
+    private int modulus_bits;
+    private int prime_count;
+    private byte[][] seeds;
+    private int index;
+    private DRSA drsa;
+    private BigInteger[] ciphertexts;
+
+    @Setup
+    public void setup() throws Exception {
+        String[] fields = this.key.split(":");
+        this.modulus_bits = Integer.parseInt(fields[0]);
+        this.prime_count = Integer.parseInt(fields[1]);
+
+        // Fixed seeds, taken from the generator
+        PRBG prbg = new PRBG("benchmark", "a", 1);
+        prbg.setup();
+        this.seeds = new byte[16][DRSA.seed_bytes(this.modulus_bits, this.prime_count)];
+        for (byte[] seed : this.seeds)
+            prbg.next_bytes(seed, 0, seed.length);
+
+        this.drsa = new DRSA(this.seeds[0], this.modulus_bits, this.prime_count, null, new SievePrimeSearch());
+        BigInteger n = this.drsa.get_public_params().get("n");
+        Random random = new Random(1);
+        this.ciphertexts = new BigInteger[16];
+        for (int i = 0; i < this.ciphertexts.length; i++)
+            this.ciphertexts[i] = new BigInteger(this.modulus_bits - 1, random).mod(n);
+    }
+
+    @Benchmark
+    public DRSA generate() throws Exception {
+        this.index = (this.index + 1) % this.seeds.length;
+        return new DRSA(this.seeds[this.index], this.modulus_bits, this.prime_count, ForkJoinPool.commonPool(), new SievePrimeSearch());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BigInteger rsadp() {
+        this.index = (this.index + 1) % this.ciphertexts.length;
+        return this.drsa.rsadp(this.ciphertexts[this.index]);
+    }
+}
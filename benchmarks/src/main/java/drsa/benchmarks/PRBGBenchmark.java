@@ -0,0 +1,40 @@
+package drsa.benchmarks;
+
+import drsa.PRBG;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Byte generation throughput of an already setted up drsa.PRBG, one byte at a time and in blocks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PRBGBenchmark {
+
+    private PRBG prbg;
+    private byte[] block;
+
+    @Setup
+    public void setup() throws Exception {
+        this.prbg = new PRBG("benchmark", "a", 1);
+        this.prbg.setup();
+        this.block = new byte[1 << 16];
+    }
+
+    @Benchmark
+    public long next_byte() {
+        return this.prbg.next_byte();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1 << 16)
+    public byte[] next_bytes() {
+        this.prbg.next_bytes(this.block, 0, this.block.length);
+        return this.block;
+    }
+}
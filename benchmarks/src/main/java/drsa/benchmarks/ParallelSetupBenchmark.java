@@ -0,0 +1,51 @@
+package drsa.benchmarks;
+
+import drsa.PRBG;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of PRBG.parallel_setup() with the number of workers, for confusion strings of 3 and 4
+ * characters (about 16M and 4G bytes scanned per iteration).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ParallelSetupBenchmark {
+
+    @Param({"abc", "abcd"})
+    public String confusion_string;
+
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    private ExecutorService executor;
+    private PRBG prbg;
+
+    @Setup(Level.Trial)
+    public void start() {
+        this.executor = Executors.newFixedThreadPool(this.workers);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        this.executor.shutdown();
+    }
+
+    @Setup(Level.Invocation)
+    public void create() throws Exception {
+        this.prbg = new PRBG("benchmark", this.confusion_string, 1);
+    }
+
+    @Benchmark
+    public long parallel_setup() throws Exception {
+        this.prbg.parallel_setup(this.executor, this.workers);
+        return this.prbg.getSeed();
+    }
+}
@@ -0,0 +1,94 @@
+package drsa.benchmarks;
+
+import drsa.DRSA;
+import drsa.PRBG;
+import drsa.Pkcs1Encoder;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.KeyFactory;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PKCS#1 PEM encoding of a 4096 bit key pair by drsa.Pkcs1Encoder (without the cache of DRSA),
+ * against the KeyFactory and BouncyCastle round trip that rsagen used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PemBenchmark {
+
+    private DRSA drsa;
+    private BigInteger[] private_fields;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() throws Exception {
+        PRBG prbg = new PRBG("benchmark", "a", 1);
+        prbg.setup();
+        byte[] seed = new byte[512];
+        prbg.next_bytes(seed, 0, seed.length);
+        this.drsa = new DRSA(seed);
+
+        Map<String, BigInteger> priv = this.drsa.get_private_params();
+        Map<String, BigInteger> pub = this.drsa.get_public_params();
+        this.private_fields = new BigInteger[]{BigInteger.ZERO, pub.get("n"), pub.get("e"), priv.get("d"),
+                priv.get("p"), priv.get("q"), priv.get("dp"), priv.get("dq"), priv.get("qinv")};
+        this.buffer = ByteBuffer.allocate(Pkcs1Encoder.der_length(this.private_fields));
+    }
+
+    @Benchmark
+    public String private_key_pem() {
+        return Pkcs1Encoder.pem("RSA PRIVATE KEY", this.drsa.get_private_key_der());
+    }
+
+    @Benchmark
+    public String public_key_pem() {
+        return Pkcs1Encoder.pem("RSA PUBLIC KEY", this.drsa.get_public_key_der());
+    }
+
+    @Benchmark
+    public ByteBuffer private_key_der_reused_buffer() {
+        this.buffer.clear();
+        Pkcs1Encoder.put_der(this.buffer, this.private_fields);
+        return this.buffer;
+    }
+
+    @Benchmark
+    public String private_key_pem_bouncycastle() throws Exception {
+        BigInteger[] f = this.private_fields;
+        RSAPrivateCrtKeySpec spec = new RSAPrivateCrtKeySpec(f[1], f[2], f[3], f[4], f[5], f[6], f[7], f[8]);
+        byte[] pkcs8 = KeyFactory.getInstance("RSA").generatePrivate(spec).getEncoded();
+        byte[] pkcs1 = PrivateKeyInfo.getInstance(pkcs8).parsePrivateKey().toASN1Primitive().getEncoded();
+        return bouncycastle_pem("RSA PRIVATE KEY", pkcs1);
+    }
+
+    @Benchmark
+    public String public_key_pem_bouncycastle() throws Exception {
+        RSAPublicKeySpec spec = new RSAPublicKeySpec(this.private_fields[1], this.private_fields[2]);
+        byte[] x509 = KeyFactory.getInstance("RSA").generatePublic(spec).getEncoded();
+        ASN1Primitive pkcs1 = SubjectPublicKeyInfo.getInstance(x509).parsePublicKey();
+        return bouncycastle_pem("RSA PUBLIC KEY", pkcs1.getEncoded());
+    }
+
+    private static String bouncycastle_pem(String type, byte[] der) throws Exception {
+        StringWriter string_writer = new StringWriter();
+        PemWriter pem_writer = new PemWriter(string_writer);
+        pem_writer.writeObject(new PemObject(type, der));
+        pem_writer.close();
+        return string_writer.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package drsa.benchmarks;
+
+import drsa.DRSA;
+import drsa.PRBG;
+import drsa.PrivateKeyEngine;
+import drsa.SievePrimeSearch;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * drsa.PrivateKeyEngine against the JCA Signature ("SHA256withRSA") and Cipher
+ * ("RSA/ECB/PKCS1Padding") of the same key: one signature or decryption at a time, and batches of
+ * BATCH signatures, spread over the common fork-join pool by the engine and by a parallel stream of
+ * per-thread Signature objects for the JCA.<br>
+ * SunRsaSign has no multi-prime private keys, so the JCA methods always use a two primes key of the
+ * same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PrivateKeyEngineBenchmark {
+
+    private static final int BATCH = 64;
+
+    /**
+     * Modulus size and number of primes of the engine key, as bits:primes.
+     */
+    @Param({"2048:2", "2048:3", "4096:2", "4096:3"})
+    public String key;
+
+    private PrivateKeyEngine engine;
+    private PrivateKey jca_key;
+    private List<byte[]> messages;
+    private byte[] engine_ciphertext;
+    private byte[] jca_ciphertext;
+    private final ThreadLocal<Signature> signatures = new ThreadLocal<>();
+
+    @State(Scope.Thread)
+    public static class Jca {
+        Signature signature;
+        Cipher cipher;
+        int index;
+
+        @Setup
+        public void setup(PrivateKeyEngineBenchmark benchmark) throws Exception {
+            this.signature = Signature.getInstance("SHA256withRSA");
+            this.signature.initSign(benchmark.jca_key);
+            this.cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+            this.cipher.init(Cipher.DECRYPT_MODE, benchmark.jca_key);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Index {
+        int index;
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        String[] fields = this.key.split(":");
+        int modulus_bits = Integer.parseInt(fields[0]);
+        int prime_count = Integer.parseInt(fields[1]);
+
+        // Fixed seeds, taken from the generator
+        PRBG prbg = new PRBG("benchmark", "a", 1);
+        prbg.setup();
+        byte[] seed = new byte[DRSA.seed_bytes(modulus_bits, prime_count)];
+        prbg.next_bytes(seed, 0, seed.length);
+        DRSA drsa = new DRSA(seed, modulus_bits, prime_count, null, new SievePrimeSearch());
+        this.engine = new PrivateKeyEngine(drsa);
+        DRSA jca_drsa = prime_count == 2 ? drsa : new DRSA(Arrays.copyOf(seed, DRSA.seed_bytes(modulus_bits)), modulus_bits);
+        this.jca_key = jca_private_key(jca_drsa);
+
+        Random random = new Random(1);
+        this.messages = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            byte[] message = new byte[64];
+            random.nextBytes(message);
+            this.messages.add(message);
+        }
+        Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, public_key(drsa));
+        this.engine_ciphertext = cipher.doFinal(this.messages.get(0));
+        cipher.init(Cipher.ENCRYPT_MODE, public_key(jca_drsa));
+        this.jca_ciphertext = cipher.doFinal(this.messages.get(0));
+    }
+
+    @Benchmark
+    public byte[] engine_sign(Index index) {
+        index.index = (index.index + 1) % BATCH;
+        return this.engine.sign(this.messages.get(index.index));
+    }
+
+    @Benchmark
+    public byte[] jca_sign(Jca jca) throws Exception {
+        jca.index = (jca.index + 1) % BATCH;
+        jca.signature.update(this.messages.get(jca.index));
+        return jca.signature.sign();
+    }
+
+    @Benchmark
+    public byte[] engine_decrypt() throws Exception {
+        return this.engine.decrypt(this.engine_ciphertext);
+    }
+
+    @Benchmark
+    public byte[] jca_decrypt(Jca jca) throws Exception {
+        return jca.cipher.doFinal(this.jca_ciphertext);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<byte[]> engine_sign_batch() {
+        return this.engine.sign(this.messages);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<byte[]> jca_sign_batch() {
+        return this.messages.parallelStream().map(message -> {
+            try {
+                Signature signature = this.signatures.get();
+                if (signature == null) {
+                    signature = Signature.getInstance("SHA256withRSA");
+                    signature.initSign(this.jca_key);
+                    this.signatures.set(signature);
+                }
+                signature.update(message);
+                return signature.sign();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).collect(Collectors.toList());
+    }
+
+    private static PrivateKey jca_private_key(DRSA drsa) throws Exception {
+        Map<String, BigInteger> public_params = drsa.get_public_params();
+        Map<String, BigInteger> private_params = drsa.get_private_params();
+        return KeyFactory.getInstance("RSA").generatePrivate(new RSAPrivateCrtKeySpec(
+                public_params.get("n"), public_params.get("e"), private_params.get("d"),
+                private_params.get("p"), private_params.get("q"),
+                private_params.get("dp"), private_params.get("dq"), private_params.get("qinv")));
+    }
+
+    private static PublicKey public_key(DRSA drsa) throws Exception {
+        Map<String, BigInteger> public_params = drsa.get_public_params();
+        return KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                public_params.get("n"), public_params.get("e")));
+    }
+}
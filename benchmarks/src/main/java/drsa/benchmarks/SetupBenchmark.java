@@ -0,0 +1,41 @@
+package drsa.benchmarks;
+
+import drsa.PRBG;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of PRBG.setup() for fixed passwords, confusion strings and iteration counts, so that the
+ * results are comparable between runs (randgen -bmk uses random passwords).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SetupBenchmark {
+
+    @Param({"benchmark"})
+    public String password;
+
+    @Param({"a", "ab", "abc"})
+    public String confusion_string;
+
+    @Param({"1", "5"})
+    public int iteration_count;
+
+    private PRBG prbg;
+
+    @Setup(Level.Invocation)
+    public void create() throws Exception {
+        this.prbg = new PRBG(this.password, this.confusion_string, this.iteration_count);
+    }
+
+    @Benchmark
+    public long setup() {
+        this.prbg.setup();
+        return this.prbg.getSeed();
+    }
+}
@@ -0,0 +1,35 @@
+package drsa;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Limits of the requests of drsa.KeyDaemon, checked before any setup or prime search runs.
+ */
+public class KeyDaemonTest {
+
+    private final KeyDaemon daemon = new KeyDaemon(null);
+
+    @Test
+    public void rejects_a_key_seed_above_the_limit() {
+        assertThrows(IllegalArgumentException.class, () -> this.daemon.execute(
+                new String[]{"KEY", "ola", "o", "2", String.valueOf(KeyDaemon.MAX_SEED_BYTES + 1)}));
+        assertThrows(IllegalArgumentException.class, () -> this.daemon.execute(
+                new String[]{"KEY", "ola", "o", "2", String.valueOf(rsagen.MAX_SEED_BYTES)}));
+    }
+
+    @Test
+    public void derives_the_readme_key() throws Exception {
+        // The key pair of the README example, at the root of the repository
+        byte[] expected = (new String(Files.readAllBytes(Paths.get("../java_512_priv_key.pem")), StandardCharsets.US_ASCII)
+                + new String(Files.readAllBytes(Paths.get("../java_512_pub_key.pem")), StandardCharsets.US_ASCII))
+                .getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(expected, this.daemon.execute(new String[]{"KEY", "ola", "o", "2", "512"}));
+    }
+}
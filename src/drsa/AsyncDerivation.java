@@ -0,0 +1,81 @@
+package drsa;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs derivations on a caller supplied executor, as CompletableFutures that can be cancelled and
+ * given a deadline.<br>
+ * The setup and the prime search poll the future: as soon as it is done, because the caller
+ * cancelled or completed it, or because its deadline passed (it then completes with a
+ * TimeoutException), they stop with a CancellationException and the worker is freed. PBKDF2 cannot
+ * be stopped, so it is only checked for before and after. The checked exceptions of the blocking
+ * API complete the future exceptionally instead of being thrown.<br>
+ * Only the future returned here is polled: cancelling a future derived from it with thenApply() or
+ * similar does not stop the derivation.
+ * <pre>
+ * CompletableFuture&lt;DRSA&gt; key = KeyPipeline.builder().password("ola").confusion_string("o")
+ *         .iteration_count(2).build().derive_async(executor, 2000);
+ * </pre>
+ */
+public class AsyncDerivation {
+
+    /**
+     * A derivation that polls a cancellation flag.
+     */
+    interface Task<T> {
+        T run(BooleanSupplier cancelled) throws Exception;
+    }
+
+    private AsyncDerivation() {
+    }
+
+    /** Derives the key pair of {@link DRSA#DRSA(byte[])} for the given seed.
+     * @param seed A N byte seed
+     * @param executor Executor of the prime searches
+     * @param timeout_millis Deadline, from now, or 0 for none
+     * @return The future key pair
+     */
+    public static CompletableFuture<DRSA> key(byte[] seed, Executor executor, long timeout_millis) {
+        byte[] copy = seed.clone();
+        return submit(executor, timeout_millis, cancelled -> new DRSA(
+                new BigInteger(1, Arrays.copyOfRange(copy, 0, copy.length / 2)),
+                new BigInteger(1, Arrays.copyOfRange(copy, copy.length / 2, copy.length)),
+                null, DRSA.default_prime_search, cancelled));
+    }
+
+    /** Runs the given task on the given executor.
+     * @param executor Executor of the task
+     * @param timeout_millis Deadline, from now, or 0 for none
+     * @param task The task, which polls the flag it is given
+     * @return The future result of the task
+     */
+    static <T> CompletableFuture<T> submit(Executor executor, long timeout_millis, Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (timeout_millis > 0)
+            future.orTimeout(timeout_millis, TimeUnit.MILLISECONDS);
+        BooleanSupplier cancelled = future::isDone;
+        try {
+            executor.execute(() -> {
+                // Cancelled, or timed out, while queued
+                if (future.isDone())
+                    return;
+                // A CancellationException comes from the flag, once the future is done, so that
+                // completing with it is a no-op
+                try {
+                    future.complete(task.run(cancelled));
+                } catch (Exception | Error e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
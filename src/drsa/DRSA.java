@@ -1,5 +1,8 @@
 package drsa;
 
+import drsa.events.KeyParametersEvent;
+import drsa.events.PrimeSearchEvent;
+import drsa.events.SmallPrimeCheckEvent;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
@@ -9,6 +12,10 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
 
 /**
  * Deterministic RSA module that produces the parameters of a RSA key
@@ -23,55 +30,44 @@ public class DRSA {
     private  BigInteger d;
     private BigInteger phi;
 
+    /**
+     * Chinese Remainder Theorem parameters of the private key: d mod (p-1), d mod (q-1)
+     * and q^-1 mod p.
+     */
+    private BigInteger dp;
+    private BigInteger dq;
+    private BigInteger qinv;
+
+    /**
+     * Primes r_3 ... r_k of a multi-prime key (RFC 8017, 3.2), with their CRT exponents
+     * d_i = d mod (r_i - 1) and coefficients t_i = (r_1 * ... * r_(i-1))^-1 mod r_i. Empty for a
+     * two primes key.
+     */
+    private BigInteger[] other_primes;
+    private BigInteger[] other_exponents;
+    private BigInteger[] other_coefficients;
+
+    /**
+     * PKCS#1 PEM encodings of the key pair, computed on first use (see drsa.Pkcs1Encoder).
+     */
+    private volatile String private_key_pem;
+    private volatile String public_key_pem;
 
     /**
      * List of fixed prime numbers < 1000, in order to check that p and q will not be coprimes
      * with small primes.
      */
-    static List<BigInteger> small_primes = new ArrayList<BigInteger>(
-            Arrays.asList( new BigInteger("2"), new BigInteger("3"), new BigInteger("5"),
-            new BigInteger("7"), new BigInteger("11"), new BigInteger("13"), new BigInteger("17"),
-            new BigInteger("19"), new BigInteger("23"), new BigInteger("29"), new BigInteger("31"),
-            new BigInteger("37"), new BigInteger("41"), new BigInteger("43"), new BigInteger("47"),
-            new BigInteger("53"), new BigInteger("59"), new BigInteger("61"), new BigInteger("67"),
-            new BigInteger("71"), new BigInteger("73"), new BigInteger("79"), new BigInteger("83"),
-            new BigInteger("89"), new BigInteger("97"), new BigInteger("101"), new BigInteger("103"),
-            new BigInteger("107"), new BigInteger("109"), new BigInteger("113"), new BigInteger("127"),
-            new BigInteger("131"), new BigInteger("137"), new BigInteger("139"), new BigInteger("149"),
-            new BigInteger("151"), new BigInteger("157"), new BigInteger("163"), new BigInteger("167"),
-            new BigInteger("173"), new BigInteger("179"), new BigInteger("181"), new BigInteger("191"),
-            new BigInteger("193"), new BigInteger("197"), new BigInteger("199"), new BigInteger("211"),
-            new BigInteger("223"), new BigInteger("227"), new BigInteger("229"), new BigInteger("233"),
-            new BigInteger("239"), new BigInteger("241"), new BigInteger("251"), new BigInteger("257"),
-            new BigInteger("263"), new BigInteger("269"), new BigInteger("271"), new BigInteger("277"),
-            new BigInteger("281"), new BigInteger("283"), new BigInteger("293"), new BigInteger("307"),
-            new BigInteger("311"), new BigInteger("313"), new BigInteger("317"), new BigInteger("331"),
-            new BigInteger("337"), new BigInteger("347"), new BigInteger("349"), new BigInteger("353"),
-            new BigInteger("359"), new BigInteger("367"), new BigInteger("373"), new BigInteger("379"),
-            new BigInteger("383"), new BigInteger("389"), new BigInteger("397"), new BigInteger("401"),
-            new BigInteger("409"), new BigInteger("419"), new BigInteger("421"), new BigInteger("431"),
-            new BigInteger("433"), new BigInteger("439"), new BigInteger("443"), new BigInteger("449"),
-            new BigInteger("457"), new BigInteger("461"), new BigInteger("463"), new BigInteger("467"),
-            new BigInteger("479"), new BigInteger("487"), new BigInteger("491"), new BigInteger("499"),
-            new BigInteger("503"), new BigInteger("509"), new BigInteger("521"), new BigInteger("523"),
-            new BigInteger("541"), new BigInteger("547"), new BigInteger("557"), new BigInteger("563"),
-            new BigInteger("569"), new BigInteger("571"), new BigInteger("577"), new BigInteger("587"),
-            new BigInteger("593"), new BigInteger("599"), new BigInteger("601"), new BigInteger("607"),
-            new BigInteger("613"), new BigInteger("617"), new BigInteger("619"), new BigInteger("631"),
-            new BigInteger("641"), new BigInteger("643"), new BigInteger("647"), new BigInteger("653"),
-            new BigInteger("659"), new BigInteger("661"), new BigInteger("673"), new BigInteger("677"),
-            new BigInteger("683"), new BigInteger("691"), new BigInteger("701"), new BigInteger("709"),
-            new BigInteger("719"), new BigInteger("727"), new BigInteger("733"), new BigInteger("739"),
-            new BigInteger("743"), new BigInteger("751"), new BigInteger("757"), new BigInteger("761"),
-            new BigInteger("769"), new BigInteger("773"), new BigInteger("787"), new BigInteger("797"),
-            new BigInteger("809"), new BigInteger("811"), new BigInteger("821"), new BigInteger("823"),
-            new BigInteger("827"), new BigInteger("829"), new BigInteger("839"), new BigInteger("853"),
-            new BigInteger("857"), new BigInteger("859"), new BigInteger("863"), new BigInteger("877"),
-            new BigInteger("881"), new BigInteger("883"), new BigInteger("887"), new BigInteger("907"),
-            new BigInteger("911"), new BigInteger("919"), new BigInteger("929"), new BigInteger("937"),
-            new BigInteger("941"), new BigInteger("947"), new BigInteger("953"), new BigInteger("967"),
-            new BigInteger("971"), new BigInteger("977"), new BigInteger("983"), new BigInteger("991"),
-            new BigInteger("997")));
+    static final int[] small_primes = SievePrimeSearch.primes_below(1000);
+
+    /**
+     * Smallest modulus for a given size, so that e = 2^16+1 stays below phi.
+     */
+    public static final int MIN_MODULUS_BITS = 64;
+
+    /**
+     * Prime search used when none is given.
+     */
+    static final PrimeSearch default_prime_search = new SievePrimeSearch();
 
 
     /** Generates the p and q primes from the given seed, which is cut in half and converted to two
@@ -81,30 +77,148 @@ public class DRSA {
      * @param seed A N byte seed.
      */
     public DRSA(byte[] seed) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, NoSuchPaddingException {
+        this(seed, null);
+    }
 
+    /** Same as {@link #DRSA(byte[])}, but the search for p runs on the given executor while the
+     * search for q runs on the calling thread. Both searches only depend on their half of the seed,
+     * so the result is the same as the sequential one.
+     * @param seed A N byte seed.
+     * @param executor Executor for the search of p (e.g. ForkJoinPool.commonPool()), or null to
+     *                 search p and q sequentially on the calling thread.
+     */
+    public DRSA(byte[] seed, Executor executor) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, NoSuchPaddingException {
+        this(seed, executor, default_prime_search);
+    }
+
+    /** Same as {@link #DRSA(byte[], Executor)}, with the given prime search engine.
+     * @param seed A N byte seed.
+     * @param executor Executor for the search of p, or null to search p and q sequentially.
+     * @param prime_search Engine that finds the next prime above each half of the seed.
+     */
+    public DRSA(byte[] seed, Executor executor, PrimeSearch prime_search) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, NoSuchPaddingException {
         // Obtaining p and q from the seed
-        byte[] seed1 = Arrays.copyOfRange(seed, 0, seed.length / 2);
-        byte[] seed2 = Arrays.copyOfRange(seed, seed.length / 2, seed.length);
+        this(new BigInteger(1, Arrays.copyOfRange(seed, 0, seed.length / 2)),
+                new BigInteger(1, Arrays.copyOfRange(seed, seed.length / 2, seed.length)),
+                executor, prime_search);
+    }
 
-        BigInteger b1 = new BigInteger(1, seed1);
-        BigInteger b2 = new BigInteger(1, seed2);
+    /** Generates a key pair with a modulus of exactly the given size, whatever the size of the seed
+     * beyond the first seed_bytes(modulus_bits) bytes, which are the only ones used. The search for p
+     * starts at a number of modulus_bits - modulus_bits / 2 bits taken from the beginning of the
+     * seed, the search for q at a number of modulus_bits / 2 bits taken from the following bytes,
+     * both with their two highest bits set so that n = p * q has modulus_bits bits.
+     * @param seed A seed of at least seed_bytes(modulus_bits) bytes
+     * @param modulus_bits Size of n, at least MIN_MODULUS_BITS
+     */
+    public DRSA(byte[] seed, int modulus_bits) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, NoSuchPaddingException {
+        this(seed, modulus_bits, null, default_prime_search);
+    }
 
-        BigInteger p = b1.nextProbablePrime();
-        BigInteger q = b2.nextProbablePrime();
+    /** Same as {@link #DRSA(byte[], int)}, with the given executor and prime search engine.
+     * @param seed A seed of at least seed_bytes(modulus_bits) bytes
+     * @param modulus_bits Size of n, at least MIN_MODULUS_BITS
+     * @param executor Executor for the search of p, or null to search p and q sequentially.
+     * @param prime_search Engine that finds the next prime above each starting point.
+     */
+    public DRSA(byte[] seed, int modulus_bits, Executor executor, PrimeSearch prime_search) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, NoSuchPaddingException {
+        this(seed, modulus_bits, 2, executor, prime_search);
+    }
 
-        // Verify that p and q are not divisible for small primes
-        for (BigInteger b : DRSA.small_primes){
-            if (p.remainder(b).equals(BigInteger.ZERO))
-                p = p.nextProbablePrime();
-            if (q.remainder(b).equals(BigInteger.ZERO))
-                q = q.nextProbablePrime();
+    /** Same as {@link #DRSA(byte[], int, int, Executor, PrimeSearch)}, searching the primes
+     * sequentially with the default prime search engine.
+     * @param seed A seed of at least seed_bytes(modulus_bits, prime_count) bytes
+     * @param modulus_bits Size of n, at least MIN_MODULUS_BITS
+     * @param prime_count Number of primes, between 2 and max_prime_count(modulus_bits)
+     */
+    public DRSA(byte[] seed, int modulus_bits, int prime_count) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, NoSuchPaddingException {
+        this(seed, modulus_bits, prime_count, null, default_prime_search);
+    }
+
+    /** Generates a multi-prime key pair (RFC 8017) with a modulus of exactly the given size. The
+     * first seed_bytes(modulus_bits, prime_count) bytes of the seed are cut in prime_count
+     * consecutive slices, one per prime, of (prime_bits + 7) / 8 bytes each; the primes have
+     * modulus_bits / prime_count bits, the first modulus_bits % prime_count ones one more. Each
+     * search starts at the highest bits of its slice, with enough of the highest ones set (see
+     * top_bits()) that n has modulus_bits bits. With 2 primes, this is {@link #DRSA(byte[], int)}.
+     * @param seed A seed of at least seed_bytes(modulus_bits, prime_count) bytes
+     * @param modulus_bits Size of n, at least MIN_MODULUS_BITS
+     * @param prime_count Number of primes, between 2 and max_prime_count(modulus_bits)
+     * @param executor Executor for the searches of all the primes but the last one, which runs on
+     *                 the calling thread, or null to search them sequentially.
+     * @param prime_search Engine that finds the next prime above each starting point.
+     */
+    public DRSA(byte[] seed, int modulus_bits, int prime_count, Executor executor, PrimeSearch prime_search) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException, NoSuchPaddingException {
+        this(prime_starts(seed, modulus_bits, prime_count), executor, prime_search, null);
+    }
+
+    /** Generates the key pair from the starting points of the searches for p and q.
+     * @param b1 Starting point of the search for p
+     * @param b2 Starting point of the search for q
+     * @param executor Executor for the search of p, or null to search p and q sequentially.
+     * @param prime_search Engine that finds the next prime above each starting point.
+     */
+    DRSA(BigInteger b1, BigInteger b2, Executor executor, PrimeSearch prime_search) {
+        this(b1, b2, executor, prime_search, null);
+    }
+
+    /** Same as {@link #DRSA(BigInteger, BigInteger, Executor, PrimeSearch)}, but the prime searches
+     * poll the given flag and stop with a CancellationException as soon as it is raised.
+     * @param cancelled Cancellation flag, or null
+     */
+    DRSA(BigInteger b1, BigInteger b2, Executor executor, PrimeSearch prime_search, BooleanSupplier cancelled) {
+        this(new BigInteger[]{b1, b2}, executor, prime_search, cancelled);
+    }
+
+    /** Generates the key pair from the starting points of the searches for its primes, p and q
+     * first.
+     * @param starts Starting points, at least 2
+     * @param executor Executor for the searches of all the primes but the last one, or null to
+     *                 search them sequentially.
+     * @param prime_search Engine that finds the next prime above each starting point.
+     * @param cancelled Cancellation flag, or null
+     */
+    DRSA(BigInteger[] starts, Executor executor, PrimeSearch prime_search, BooleanSupplier cancelled) {
+        int k = starts.length;
+        BigInteger[] primes = new BigInteger[k];
+        if (executor == null) {
+            for (int i = 0; i < k; i++)
+                primes[i] = search_prime(starts[i], prime_search, cancelled);
+        } else {
+            List<CompletableFuture<BigInteger>> searches = new ArrayList<>(k - 1);
+            for (int i = 0; i < k - 1; i++) {
+                BigInteger start = starts[i];
+                searches.add(CompletableFuture.supplyAsync(() -> search_prime(start, prime_search, cancelled), executor));
+            }
+            primes[k - 1] = search_prime(starts[k - 1], prime_search, cancelled);
+            try {
+                for (int i = 0; i < k - 1; i++)
+                    primes[i] = searches.get(i).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            }
         }
+        PRBG.check_cancelled(cancelled);
+        // A repeated prime makes the multi-prime CRT parameters undefined. Two primes keep the
+        // original behaviour for the seeds whose halves give the same prime
+        if (k > 2 && new HashSet<>(Arrays.asList(primes)).size() < k)
+            throw new IllegalArgumentException("The seed gives the same prime twice");
 
+        KeyParametersEvent event = new KeyParametersEvent();
+        event.begin();
         BigInteger ONE = BigInteger.ONE;
+        BigInteger p = primes[0];
+        BigInteger q = primes[1];
 
         // n and phi calculation
-        BigInteger n = p.multiply(q);
-        BigInteger phi = (p.subtract(ONE)).multiply(q.subtract(ONE));
+        BigInteger n = ONE;
+        BigInteger phi = ONE;
+        for (BigInteger prime : primes) {
+            n = n.multiply(prime);
+            phi = phi.multiply(prime.subtract(ONE));
+        }
         BigInteger e = new BigInteger("65537");
 
         assert e.compareTo(ONE) > 0;
@@ -114,6 +228,31 @@ public class DRSA {
         // private exponent calculation
         BigInteger d = e.modInverse(phi);
 
+        // CRT parameters
+        BigInteger dp = d.mod(p.subtract(ONE));
+        BigInteger dq = d.mod(q.subtract(ONE));
+        BigInteger qinv = q.modInverse(p);
+
+        // Multi-prime CRT parameters
+        BigInteger[] other_primes = Arrays.copyOfRange(primes, 2, k);
+        BigInteger[] other_exponents = new BigInteger[k - 2];
+        BigInteger[] other_coefficients = new BigInteger[k - 2];
+        BigInteger product = p.multiply(q);
+        for (int i = 0; i < k - 2; i++) {
+            BigInteger r = other_primes[i];
+            other_exponents[i] = d.mod(r.subtract(ONE));
+            other_coefficients[i] = product.modInverse(r);
+            product = product.multiply(r);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.p_bits = p.bitLength();
+            event.q_bits = q.bitLength();
+            event.prime_count = k;
+            event.modulus_bits = n.bitLength();
+            event.commit();
+        }
+
         // Done
         this.p = p;
         this.q = q;
@@ -121,6 +260,12 @@ public class DRSA {
         this.e = e;
         this.d = d;
         this.phi = phi;
+        this.dp = dp;
+        this.dq = dq;
+        this.qinv = qinv;
+        this.other_primes = other_primes;
+        this.other_exponents = other_exponents;
+        this.other_coefficients = other_coefficients;
 
 
 /*        String input = "test";
@@ -136,7 +281,162 @@ public class DRSA {
     }
 
 
-    /** Retrieves the private parameters from the given drsa.DRSA instance (d, p, q).
+    /** Number of seed bytes used by {@link #DRSA(byte[], int)} for the given modulus size.
+     * @param modulus_bits Size of n
+     * @return The number of bytes of the starting points of p and q
+     */
+    public static int seed_bytes(int modulus_bits) {
+        return seed_bytes(modulus_bits, 2);
+    }
+
+    /** Number of seed bytes used by {@link #DRSA(byte[], int, int, Executor, PrimeSearch)} for the
+     * given modulus size and number of primes.
+     * @param modulus_bits Size of n
+     * @param prime_count Number of primes
+     * @return The number of bytes of the starting points of the primes
+     */
+    public static int seed_bytes(int modulus_bits, int prime_count) {
+        int bytes = 0;
+        for (int i = 0; i < prime_count; i++)
+            bytes += (prime_bits(modulus_bits, prime_count, i) + 7) / 8;
+        return bytes;
+    }
+
+    /** Starting points of the searches of the primes of a multi-prime key, from consecutive slices
+     * of the seed.
+     */
+    static BigInteger[] prime_starts(byte[] seed, int modulus_bits, int prime_count) {
+        check_modulus_bits(modulus_bits, prime_count);
+        int needed = seed_bytes(modulus_bits, prime_count);
+        if (seed.length < needed)
+            throw new IllegalArgumentException(String.format("A %d bits modulus of %d primes needs a seed of at least %d bytes",
+                    modulus_bits, prime_count, needed));
+        BigInteger[] starts = new BigInteger[prime_count];
+        for (int i = 0, from = 0; i < prime_count; i++) {
+            int bits = prime_bits(modulus_bits, prime_count, i);
+            starts[i] = prime_start(Arrays.copyOfRange(seed, from, from + (bits + 7) / 8), bits, top_bits(prime_count));
+            from += (bits + 7) / 8;
+        }
+        return starts;
+    }
+
+    /** Starting point of a prime search of the given size, from the (bits + 7) / 8 given bytes: their
+     * highest bits, with the two highest ones set.
+     */
+    static BigInteger prime_start(byte[] bytes, int bits) {
+        return prime_start(bytes, bits, 2);
+    }
+
+    /** Same as prime_start(bytes, bits), with the given number of highest bits set.
+     */
+    static BigInteger prime_start(byte[] bytes, int bits, int top_bits) {
+        BigInteger start = new BigInteger(1, bytes).shiftRight(8 * bytes.length - bits);
+        for (int i = 1; i <= top_bits; i++)
+            start = start.setBit(bits - i);
+        return start;
+    }
+
+    /** Number of highest bits to set in each of the given number of starting points, so that their
+     * product has as many bits as their sizes add up to: the smallest t such that
+     * (1 - 2^-t)^prime_count {@literal >=} 1/2, which is 2 for 2 primes.
+     */
+    static int top_bits(int prime_count) {
+        int t = 2;
+        while (Math.pow(1 - Math.pow(2, -t), prime_count) < 0.5)
+            t++;
+        return t;
+    }
+
+    /** Size of p (index 0) or q (index 1) for a modulus of the given size.
+     */
+    static int prime_bits(int modulus_bits, int index) {
+        return prime_bits(modulus_bits, 2, index);
+    }
+
+    /** Size of the prime of the given index for a modulus of the given size and number of primes:
+     * modulus_bits / prime_count, plus one for the first modulus_bits % prime_count ones.
+     */
+    static int prime_bits(int modulus_bits, int prime_count, int index) {
+        return modulus_bits / prime_count + (index < modulus_bits % prime_count ? 1 : 0);
+    }
+
+    static void check_modulus_bits(int modulus_bits) {
+        check_modulus_bits(modulus_bits, 2);
+    }
+
+    static void check_modulus_bits(int modulus_bits, int prime_count) {
+        if (modulus_bits < MIN_MODULUS_BITS)
+            throw new IllegalArgumentException("The modulus must have at least " + MIN_MODULUS_BITS + " bits");
+        if (prime_count < 2 || prime_count > max_prime_count(modulus_bits))
+            throw new IllegalArgumentException(String.format("A %d bits modulus must have between 2 and %d primes",
+                    modulus_bits, max_prime_count(modulus_bits)));
+    }
+
+    /** Largest number of primes of a modulus of the given size: the limit of OpenSSL, which refuses
+     * keys with more primes (2 below 1024 bits, 3 below 4096, 4 below 8192, and 5 above).
+     * @param modulus_bits Size of n
+     * @return The number of primes
+     */
+    public static int max_prime_count(int modulus_bits) {
+        if (modulus_bits < 1024)
+            return 2;
+        if (modulus_bits < 4096)
+            return 3;
+        if (modulus_bits < 8192)
+            return 4;
+        return 5;
+    }
+
+    /** Finds the next probable prime after the given number that is not divisible by small primes.
+     * @param start The seed-derived starting point
+     * @param prime_search Engine that finds the next prime
+     * @param cancelled Cancellation flag, polled during the searches, or null
+     * @return A probable prime
+     */
+    static BigInteger search_prime(BigInteger start, PrimeSearch prime_search, BooleanSupplier cancelled) {
+        BigInteger prime = next_prime(start, prime_search, cancelled);
+
+        // Verify that the prime is not divisible for small primes
+        SmallPrimeCheckEvent event = new SmallPrimeCheckEvent();
+        event.begin();
+        int rejections = 0;
+        int[] residues = SievePrimeSearch.residues(prime, DRSA.small_primes);
+        for (int i = 0; i < DRSA.small_primes.length; i++) {
+            if (residues[i] == 0) {
+                prime = next_prime(prime, prime_search, cancelled);
+                residues = SievePrimeSearch.residues(prime, DRSA.small_primes);
+                rejections++;
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.small_primes = DRSA.small_primes.length;
+            event.rejections = rejections;
+            event.commit();
+        }
+        return prime;
+    }
+
+    /** Runs the given prime search, recording it as a PrimeSearchEvent.
+     */
+    private static BigInteger next_prime(BigInteger start, PrimeSearch prime_search, BooleanSupplier cancelled) {
+        PrimeSearchEvent event = new PrimeSearchEvent();
+        event.begin();
+        BigInteger prime = prime_search.next_prime(start, cancelled);
+        event.end();
+        if (event.shouldCommit()) {
+            event.engine = prime_search.getClass().getSimpleName();
+            event.start_bits = start.bitLength();
+            event.prime_bits = prime.bitLength();
+            event.odd_candidates = prime.subtract(start).add(BigInteger.ONE).shiftRight(1).longValue();
+            event.commit();
+        }
+        return prime;
+    }
+
+    /** Retrieves the private parameters from the given drsa.DRSA instance (d, p, q, and the CRT
+     * parameters dp, dq and qinv, plus ri, di and ti for each prime i {@literal >=} 3 of a multi-prime
+     * key).
      * @return A HashMap containing the pairs (parameter, value)
      */
     public Map<String, BigInteger> get_private_params() {
@@ -144,6 +444,14 @@ public class DRSA {
         private_params.put("d", this.d);
         private_params.put("p", this.p);
         private_params.put("q", this.q);
+        private_params.put("dp", this.dp);
+        private_params.put("dq", this.dq);
+        private_params.put("qinv", this.qinv);
+        for (int i = 0; i < this.other_primes.length; i++) {
+            private_params.put("r" + (i + 3), this.other_primes[i]);
+            private_params.put("d" + (i + 3), this.other_exponents[i]);
+            private_params.put("t" + (i + 3), this.other_coefficients[i]);
+        }
         return private_params;
     }
 
@@ -157,6 +465,83 @@ public class DRSA {
         return public_params;
     }
 
+    /** Number of primes of the modulus, 2 unless the key is a multi-prime one.
+     */
+    public int getPrimeCount() {
+        return 2 + this.other_primes.length;
+    }
+
+    /** RSA encryption primitive (RFC 8017, 5.1.1): m^e mod n.
+     * @param m Message representative, between 0 and n - 1
+     * @return The ciphertext representative
+     */
+    public BigInteger rsaep(BigInteger m) {
+        if (m.signum() < 0 || m.compareTo(this.n) >= 0)
+            throw new IllegalArgumentException("message representative out of range");
+        return m.modPow(this.e, this.n);
+    }
+
+    /** RSA decryption primitive (RFC 8017, 5.1.2), with the CRT: one exponentiation modulo each
+     * prime, with an exponent of its size, then Garner's recombination.
+     * @param c Ciphertext representative, between 0 and n - 1
+     * @return The message representative, c^d mod n
+     */
+    public BigInteger rsadp(BigInteger c) {
+        if (c.signum() < 0 || c.compareTo(this.n) >= 0)
+            throw new IllegalArgumentException("ciphertext representative out of range");
+        BigInteger m_1 = c.mod(this.p).modPow(this.dp, this.p);
+        BigInteger m_2 = c.mod(this.q).modPow(this.dq, this.q);
+        BigInteger h = m_1.subtract(m_2).multiply(this.qinv).mod(this.p);
+        BigInteger m = m_2.add(this.q.multiply(h));
+        BigInteger r = this.p.multiply(this.q);
+        for (int i = 0; i < this.other_primes.length; i++) {
+            BigInteger prime = this.other_primes[i];
+            BigInteger m_i = c.mod(prime).modPow(this.other_exponents[i], prime);
+            h = m_i.subtract(m).multiply(this.other_coefficients[i]).mod(prime);
+            m = m.add(r.multiply(h));
+            r = r.multiply(prime);
+        }
+        return m;
+    }
+
+    /** PKCS#1 DER encoding of the private key, including the CRT parameters: version 0 for two
+     * primes, version 1 with the other prime infos for a multi-prime key.
+     * @return A new array with the encoding
+     */
+    public byte[] get_private_key_der() {
+        if (this.other_primes.length > 0)
+            return Pkcs1Encoder.multi_prime_private_key_der(this.n, this.e, this.d, this.p, this.q, this.dp, this.dq, this.qinv,
+                    this.other_primes, this.other_exponents, this.other_coefficients);
+        return Pkcs1Encoder.private_key_der(this.n, this.e, this.d, this.p, this.q, this.dp, this.dq, this.qinv);
+    }
+
+    /** PKCS#1 DER encoding of the public key.
+     * @return A new array with the encoding
+     */
+    public byte[] get_public_key_der() {
+        return Pkcs1Encoder.public_key_der(this.n, this.e);
+    }
+
+    /** PKCS#1 PEM encoding of the private key ("RSA PRIVATE KEY"), computed once and then cached.
+     * @return The PEM block
+     */
+    public String get_private_key_pem() {
+        String pem = this.private_key_pem;
+        if (pem == null)
+            this.private_key_pem = pem = Pkcs1Encoder.pem("RSA PRIVATE KEY", this.get_private_key_der());
+        return pem;
+    }
+
+    /** PKCS#1 PEM encoding of the public key ("RSA PUBLIC KEY"), computed once and then cached.
+     * @return The PEM block
+     */
+    public String get_public_key_pem() {
+        String pem = this.public_key_pem;
+        if (pem == null)
+            this.public_key_pem = pem = Pkcs1Encoder.pem("RSA PUBLIC KEY", this.get_public_key_der());
+        return pem;
+    }
+
     @Override
     public String toString() {
         return "drsa.DRSA{\n" +
@@ -166,6 +551,10 @@ public class DRSA {
                 ", \ne=" + e +
                 ", \nd=" + d +
                 ", \nphi=" + phi +
+                ", \ndp=" + dp +
+                ", \ndq=" + dq +
+                ", \nqinv=" + qinv +
+                (other_primes.length > 0 ? ", \nother_primes=" + Arrays.toString(other_primes) : "") +
                 '}';
     }
 }
\ No newline at end of file
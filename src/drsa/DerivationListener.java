@@ -0,0 +1,28 @@
+package drsa;
+
+import java.io.IOException;
+
+/**
+ * Receives the progress of a key derivation (see drsa.KeyPipeline): the start of each stage, and
+ * the snapshots of the setup, as a drsa.SetupListener.
+ */
+public interface DerivationListener extends SetupListener {
+
+    /**
+     * Stages of a derivation, in order.
+     */
+    enum Stage {
+        PBKDF2, SETUP, PRIME_SEARCH
+    }
+
+    /** Called when the derivation enters the given stage, on the thread that runs it.
+     * @param stage The stage
+     */
+    void stage(Stage stage);
+
+    /** Snapshots of the setup are ignored, unless overridden.
+     */
+    @Override
+    default void progress(SetupState state) throws IOException {
+    }
+}
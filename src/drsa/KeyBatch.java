@@ -0,0 +1,137 @@
+package drsa;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Batch mode of rsagen: derives many key pairs from a stream of seeds, on a bounded pool of
+ * workers, and writes the PEM files asynchronously on a separate thread.<br>
+ * The stream is a sequence of records, each one made of the key name (2 bytes big-endian length
+ * followed by the UTF-8 name) and the seed (4 bytes big-endian length followed by the seed bytes).
+ * Names with a path separator or "..", which could write outside the working directory, are
+ * refused.
+ * Each key pair is written to {@code <name>_priv_key.pem} and {@code <name>_pub_key.pem}, with the
+ * same content that rsagen produces for that seed alone, or added to a keystore under its name (see
+ * drsa.KeyStoreWriter).
+ */
+public class KeyBatch {
+
+    private final int threads;
+    private final KeyStoreWriter store;
+    private final AtomicLong keys = new AtomicLong();
+    private long records;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    /**
+     * @param threads Number of workers deriving keys
+     */
+    public KeyBatch(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * @param threads Number of workers deriving keys
+     * @param store Keystore where the keys are added instead of the PEM files, or null
+     */
+    public KeyBatch(int threads, KeyStoreWriter store) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads < 1");
+        this.threads = threads;
+        this.store = store;
+    }
+
+    /** Derives and writes the key pairs of all the records of the given stream. At most two records
+     * per worker are held in memory at any time.
+     * @param in Stream of records
+     * @return Number of key pairs written
+     */
+    public long run(InputStream in) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        Semaphore in_flight = new Semaphore(2 * this.threads);
+        DataInputStream data = new DataInputStream(in);
+        try {
+            while (this.failure.get() == null) {
+                // Only an end of input before the first byte of a record is a clean end
+                int first = data.read();
+                if (first < 0)
+                    break;
+                String name;
+                byte[] seed;
+                try {
+                    byte[] name_bytes = new byte[(first << 8) | data.readUnsignedByte()];
+                    data.readFully(name_bytes);
+                    name = new String(name_bytes, StandardCharsets.UTF_8);
+                    check_name(name);
+                    int seed_length = data.readInt();
+                    if (seed_length < 0 || seed_length > rsagen.MAX_SEED_BYTES)
+                        throw new IOException("The seed of key " + name + " must have between 0 and " + rsagen.MAX_SEED_BYTES + " bytes");
+                    seed = new byte[seed_length];
+                    data.readFully(seed);
+                } catch (EOFException e) {
+                    throw new IOException("Truncated record after " + this.records + " records", e);
+                }
+                this.records++;
+
+                in_flight.acquire();
+                workers.execute(() -> {
+                    try {
+                        DRSA drsa = new DRSA(seed);
+                        String pem_priv = this.store == null ? rsagen.private_key_pem(drsa) : null;
+                        String pem_pub = this.store == null ? rsagen.public_key_pem(drsa) : null;
+                        byte[] der = this.store != null ? drsa.get_private_key_der() : null;
+                        writer.execute(() -> {
+                            try {
+                                if (this.store != null) {
+                                    this.store.put(name, der);
+                                } else {
+                                    write(String.format("%s_priv_key.pem", name), pem_priv);
+                                    write(String.format("%s_pub_key.pem", name), pem_pub);
+                                }
+                                this.keys.incrementAndGet();
+                            } catch (IOException | IllegalArgumentException e) {
+                                this.failure.compareAndSet(null, e);
+                            } finally {
+                                in_flight.release();
+                            }
+                        });
+                    } catch (Exception e) {
+                        this.failure.compareAndSet(null, e);
+                        in_flight.release();
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            writer.shutdown();
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+        if (this.failure.get() != null)
+            throw this.failure.get();
+        return this.keys.get();
+    }
+
+    /** Checks that the given key name stays a file name in the working directory once it is part
+     * of the names of the PEM files.
+     */
+    private static void check_name(String name) throws IOException {
+        if (name.isEmpty() || name.contains("/") || name.contains("\\") || name.contains("..") || name.indexOf('\0') >= 0)
+            throw new IOException("Invalid key name '" + name + "': it must not be empty, nor contain '/', '\\', '..' or NUL");
+    }
+
+    private static void write(String file_name, String content) throws IOException {
+        Files.write(Paths.get(file_name), content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,309 @@
+package drsa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Resident key derivation service, listening on a loopback TCP port, so that the JVM start-up,
+ * class loading and JIT warm-up are paid once instead of once per key.<br>
+ * Each connection is handled on its own thread (a virtual thread when the JVM supports them), and
+ * carries one request per line, with tab separated fields:<br>
+ * - {@code KEY <password> <confusion string> <iteration count> <seed bytes>} - the PEM private and
+ *   public keys that {@code randgen -nob <seed bytes> | rsagen} would write.<br>
+ * - {@code BYTES <password> <confusion string> <iteration count> <number of bytes>} - the bytes
+ *   that randgen would output.<br>
+ * - {@code STATS} - the latency statistics of each stage.<br>
+ * Responses are {@code OK <length>} followed by a new line and the payload, or {@code ERR <message>}.
+ * Concurrent requests with the same password, confusion string and iteration count share a single
+ * PRBG setup.<br>
+ * Nothing a client sends is trusted to be small: request lines, iteration counts, confusion strings
+ * and sizes are capped, at most MAX_CONNECTIONS connections are served and MAX_REQUESTS requests
+ * executed at a time, and the setup and the prime search of a request are cancelled once it has
+ * run for REQUEST_TIMEOUT_MILLIS.
+ */
+public class KeyDaemon {
+
+    /**
+     * Limits for the sizes asked by clients. The seed sets the size of the key, and a single
+     * Miller-Rabin test, which cannot be cancelled, takes seconds from 16384 bit primes on: 1024
+     * bytes (an 8192 bit key, found in about 20 s) keep the prime search well within
+     * REQUEST_TIMEOUT_MILLIS. The bytes are bounded to bound memory.
+     */
+    static final int MAX_SEED_BYTES = 1024;
+    static final int MAX_OUTPUT_BYTES = 1 << 20;
+
+    /**
+     * Limits for the generator inputs asked by clients. Each character of the confusion string
+     * multiplies the expected setup time by 256, and the iteration count multiplies both PBKDF2 and
+     * the setup.
+     */
+    static final int MAX_ITERATION_COUNT = 1 << 16;
+    static final int MAX_CONFUSION_STRING_LENGTH = 3;
+
+    /**
+     * Longest request line, in bytes, without its line terminator.
+     */
+    static final int MAX_LINE_BYTES = 4096;
+
+    /**
+     * Connections served, and requests executed, at a time. Together with MAX_OUTPUT_BYTES, they
+     * bound the threads and the memory that clients can take.
+     */
+    static final int MAX_CONNECTIONS = 256;
+    static final int MAX_REQUESTS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Time after which the setup and the prime search of a request are cancelled.
+     */
+    static final long REQUEST_TIMEOUT_MILLIS = 60000;
+
+    private final SetupCache cache;
+    private final StageStats stats = new StageStats();
+    private final Semaphore connections = new Semaphore(MAX_CONNECTIONS);
+    private final Semaphore requests = new Semaphore(MAX_REQUESTS);
+
+    /**
+     * Setups in progress, by generator inputs digest, so that identical requests wait for the
+     * same setup instead of running their own.
+     */
+    private final ConcurrentHashMap<ByteBuffer, CompletableFuture<Long>> setups = new ConcurrentHashMap<>();
+
+    /**
+     * @param cache Cache of post-setup states, or null
+     */
+    public KeyDaemon(SetupCache cache) {
+        this.cache = cache;
+    }
+
+    public StageStats getStats() {
+        return stats;
+    }
+
+    /** Accepts connections on the given loopback port until the process is stopped. Once
+     * MAX_CONNECTIONS are open, the next ones wait in the backlog of the socket.
+     * @param port TCP port, on the loopback interface only
+     */
+    public void serve(int port) throws IOException, InterruptedException {
+        ExecutorService executor = request_executor();
+        try (ServerSocket server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                this.connections.acquire();
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (IOException e) {
+                    this.connections.release();
+                    throw e;
+                }
+                executor.execute(() -> {
+                    try {
+                        this.handle(socket);
+                    } finally {
+                        this.connections.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /** One virtual thread per task when the JVM has them (Java 21+), one pooled platform thread
+     * otherwise.
+     */
+    static ExecutorService request_executor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             InputStream in = new BufferedInputStream(s.getInputStream());
+             OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            try {
+                String line;
+                while ((line = read_line(in)) != null) {
+                    long start = System.nanoTime();
+                    byte[] payload;
+                    try {
+                        payload = this.execute_limited(line.split("\t", -1));
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        write_error(out, e.getMessage());
+                        continue;
+                    }
+                    out.write(String.format("OK %d%n", payload.length).getBytes(StandardCharsets.UTF_8));
+                    out.write(payload);
+                    out.flush();
+                    this.stats.record("request", System.nanoTime() - start);
+                }
+            } catch (ProtocolException e) {
+                // The rest of the line cannot be told from the next request
+                write_error(out, e.getMessage());
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+
+    /** Executes one request, once fewer than MAX_REQUESTS are in progress.
+     */
+    private byte[] execute_limited(String[] fields) throws Exception {
+        this.requests.acquire();
+        try {
+            return this.execute(fields);
+        } catch (CompletionException e) {
+            // Failure of a shared setup
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        } finally {
+            this.requests.release();
+        }
+    }
+
+    /** Executes one request.
+     * @param fields The tab separated fields of the request line
+     * @return The response payload
+     */
+    byte[] execute(String[] fields) throws Exception {
+        long deadline = System.nanoTime() + REQUEST_TIMEOUT_MILLIS * 1000000L;
+        BooleanSupplier cancelled = () -> System.nanoTime() - deadline > 0;
+        switch (fields[0]) {
+            case "KEY": {
+                check_fields(fields, 5);
+                int seed_bytes = parse_size(fields[4], MAX_SEED_BYTES);
+                PRBG prbg = this.generator(fields[1], fields[2], fields[3], cancelled);
+
+                long start = System.nanoTime();
+                byte[] seed = new byte[seed_bytes];
+                prbg.next_bytes(seed, 0, seed.length);
+                // As new DRSA(seed), but cancelled with the request
+                DRSA drsa = new DRSA(new BigInteger(1, Arrays.copyOfRange(seed, 0, seed.length / 2)),
+                        new BigInteger(1, Arrays.copyOfRange(seed, seed.length / 2, seed.length)),
+                        null, DRSA.default_prime_search, cancelled);
+                this.stats.record("primes", System.nanoTime() - start);
+
+                start = System.nanoTime();
+                String pem = rsagen.private_key_pem(drsa) + rsagen.public_key_pem(drsa);
+                this.stats.record("encode", System.nanoTime() - start);
+                return pem.getBytes(StandardCharsets.US_ASCII);
+            }
+            case "BYTES": {
+                check_fields(fields, 5);
+                int nob = parse_size(fields[4], MAX_OUTPUT_BYTES);
+                PRBG prbg = this.generator(fields[1], fields[2], fields[3], cancelled);
+                byte[] bytes = new byte[nob];
+                prbg.next_bytes(bytes, 0, bytes.length);
+                return bytes;
+            }
+            case "STATS":
+                return this.stats.toString().getBytes(StandardCharsets.UTF_8);
+            default:
+                throw new IllegalArgumentException("Unknown request " + fields[0]);
+        }
+    }
+
+    /** Builds a setted up generator. The setup is shared with any identical request in progress,
+     * and taken from the cache when there is one.
+     */
+    private PRBG generator(String password, String confusion_string, String iteration_count_field,
+                           BooleanSupplier cancelled) throws Exception {
+        if (confusion_string.length() > MAX_CONFUSION_STRING_LENGTH)
+            throw new IllegalArgumentException(String.format("Confusion string must have at most %d characters",
+                    MAX_CONFUSION_STRING_LENGTH));
+        int iteration_count = Integer.parseInt(iteration_count_field);
+        if (iteration_count < 1 || iteration_count > MAX_ITERATION_COUNT)
+            throw new IllegalArgumentException(String.format("Iteration count must be between 1 and %d",
+                    MAX_ITERATION_COUNT));
+
+        long start = System.nanoTime();
+        PRBG prbg = new PRBG(password, confusion_string, iteration_count);
+        this.stats.record("pbkdf2", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        ByteBuffer key = ByteBuffer.wrap(prbg.getInputsDigest());
+        CompletableFuture<Long> mine = new CompletableFuture<>();
+        CompletableFuture<Long> running = this.setups.putIfAbsent(key, mine);
+        if (running != null) {
+            // Same setup already in progress: resume from its final state
+            long seed = running.join();
+            prbg.restore_setup(seed);
+            this.stats.record("setup_coalesced", System.nanoTime() - start);
+            return prbg;
+        }
+        try {
+            prbg.setup(this.cache, null, null, 0, cancelled);
+            mine.complete(prbg.getSeed());
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.setups.remove(key, mine);
+        }
+        this.stats.record("setup", System.nanoTime() - start);
+        return prbg;
+    }
+
+    /** Reads one request line, in UTF-8, without its line terminator.
+     * @return The line, or null at the end of the stream
+     * @throws ProtocolException If the line is longer than MAX_LINE_BYTES
+     */
+    private static String read_line(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (line.size() == 0)
+                    return null;
+                break;
+            }
+            if (line.size() == MAX_LINE_BYTES)
+                throw new ProtocolException(String.format("Request line longer than %d bytes", MAX_LINE_BYTES));
+            line.write(b);
+        }
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static void write_error(OutputStream out, String message) throws IOException {
+        out.write(String.format("ERR %s%n", String.valueOf(message).replace('\n', ' ')).getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void check_fields(String[] fields, int count) {
+        if (fields.length != count)
+            throw new IllegalArgumentException(String.format("%s expects %d fields", fields[0], count - 1));
+    }
+
+    private static int parse_size(String field, int max) {
+        int size = Integer.parseInt(field);
+        if (size < 1 || size > max)
+            throw new IllegalArgumentException(String.format("Size must be between 1 and %d", max));
+        return size;
+    }
+}
@@ -0,0 +1,147 @@
+package drsa;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Child key pairs of a setted up generator: many keys from one password, confusion string and
+ * iteration count, for the cost of a single setup.<br>
+ * The state of the generator is hashed once into a chain digest, SHA-256("DRSA key hierarchy" ||
+ * inputs digest || seed), with the seed as 8 bytes big-endian. The seed of child i is then the
+ * chain digest hashed with i, and expanded to the size of the key as in drsa.SeedExpander; a child
+ * named by a label uses the UTF-8 label instead of i. No bytes of the generator are generated, and
+ * any child can be derived alone, in any order or concurrently. Knowing the seed or the key of
+ * a child gives nothing about the others or about the generator.
+ * <pre>
+ * KeyHierarchy hierarchy = KeyPipeline.builder().password("ola").confusion_string("o")
+ *         .iteration_count(2).build().hierarchy();
+ * DRSA tenant = hierarchy.child("tenant-42", 2048, 2);
+ * </pre>
+ */
+public class KeyHierarchy {
+
+    private static final byte[] DOMAIN = "DRSA key hierarchy".getBytes(StandardCharsets.US_ASCII);
+    private static final byte INDEX = 0;
+    private static final byte LABEL = 1;
+
+    private final byte[] chain_digest;
+
+    /** Takes the current state of the given generator, which is not used afterwards. Right after the
+     * setup, the children do not depend on how it was done (sequentially, in parallel, in lanes or
+     * from a cache).
+     * @param prbg A setted up generator
+     */
+    public KeyHierarchy(PRBG prbg) {
+        if (!prbg.isSettedUp())
+            throw new IllegalStateException("The generator is not setted up");
+        MessageDigest digest = sha256();
+        digest.update(DOMAIN);
+        digest.update(prbg.getInputsDigest());
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(prbg.getSeed()).array());
+        this.chain_digest = digest.digest();
+    }
+
+    /** Seed of the child with the given index.
+     * @param index Index of the child (non-negative)
+     * @param length Size of the seed, in bytes
+     * @return The seed
+     */
+    public byte[] child_seed(long index, int length) {
+        if (index < 0)
+            throw new IllegalArgumentException("index < 0");
+        return this.child_seed(INDEX, ByteBuffer.allocate(Long.BYTES).putLong(index).array(), length);
+    }
+
+    /** Seed of the child with the given label.
+     * @param label Label of the child
+     * @param length Size of the seed, in bytes
+     * @return The seed
+     */
+    public byte[] child_seed(String label, int length) {
+        return this.child_seed(LABEL, label.getBytes(StandardCharsets.UTF_8), length);
+    }
+
+    /** Key pair of the child with the given index, as {@link DRSA#DRSA(byte[], int, int, Executor, PrimeSearch)}
+     * for its seed.
+     * @param index Index of the child (non-negative)
+     * @param modulus_bits Size of the modulus
+     * @param prime_count Number of primes of the modulus
+     * @return The key pair
+     */
+    public DRSA child(long index, int modulus_bits, int prime_count) {
+        DRSA.check_modulus_bits(modulus_bits, prime_count);
+        return new DRSA(DRSA.prime_starts(this.child_seed(index, DRSA.seed_bytes(modulus_bits, prime_count)),
+                modulus_bits, prime_count), null, DRSA.default_prime_search, null);
+    }
+
+    /** Key pair of the child with the given label, as {@link DRSA#DRSA(byte[], int, int, Executor, PrimeSearch)}
+     * for its seed.
+     * @param label Label of the child
+     * @param modulus_bits Size of the modulus
+     * @param prime_count Number of primes of the modulus
+     * @return The key pair
+     */
+    public DRSA child(String label, int modulus_bits, int prime_count) {
+        DRSA.check_modulus_bits(modulus_bits, prime_count);
+        return new DRSA(DRSA.prime_starts(this.child_seed(label, DRSA.seed_bytes(modulus_bits, prime_count)),
+                modulus_bits, prime_count), null, DRSA.default_prime_search, null);
+    }
+
+    /** Key pairs of the children from, from + 1, ..., from + count - 1, each one derived on the given
+     * executor.
+     * @param from Index of the first child (non-negative)
+     * @param count Number of children
+     * @param modulus_bits Size of the modulus
+     * @param prime_count Number of primes of the modulus
+     * @param executor Executor of the derivations
+     * @return The key pairs, in the order of the indexes
+     */
+    public List<DRSA> children(long from, int count, int modulus_bits, int prime_count, Executor executor) {
+        if (from < 0 || count < 0 || from > Long.MAX_VALUE - count)
+            throw new IllegalArgumentException("Invalid range of children");
+        DRSA.check_modulus_bits(modulus_bits, prime_count);
+        List<CompletableFuture<DRSA>> derivations = new ArrayList<>(count);
+        for (long index = from; index < from + count; index++) {
+            long child = index;
+            derivations.add(CompletableFuture.supplyAsync(() -> this.child(child, modulus_bits, prime_count), executor));
+        }
+        List<DRSA> keys = new ArrayList<>(count);
+        try {
+            for (CompletableFuture<DRSA> derivation : derivations)
+                keys.add(derivation.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+        return keys;
+    }
+
+    private byte[] child_seed(byte type, byte[] name, int length) {
+        MessageDigest digest = sha256();
+        digest.update(this.chain_digest);
+        digest.update(type);
+        digest.update(name);
+        try {
+            return SeedExpander.expand(digest.digest(), length);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package drsa;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+/**
+ * In-process derivation of a key pair from a password: PBKDF2, setup of the generator, seed
+ * generation and prime search, without the byte pipe between randgen and rsagen.<br>
+ * The seed bytes go from the generator straight into the starting points of the prime searches.
+ * With a number of seed bytes, the key is the one of
+ * {@code randgen -pwd <password> -cs <confusion string> -ic <iteration count> -nob <seed bytes> | rsagen}.
+ * With a modulus size, it is the one of {@link DRSA#DRSA(byte[], int)} for the next
+ * DRSA.seed_bytes(modulus_bits) bytes of the generator.
+ * <pre>
+ * DRSA drsa = KeyPipeline.builder().password("ola").confusion_string("o").iteration_count(2)
+ *         .seed_bytes(512).build().derive();
+ * </pre>
+ * derive_async() runs the same derivation on an executor, and can be cancelled or given a deadline
+ * (see drsa.AsyncDerivation).
+ * hierarchy() sets up the generator once for many child key pairs (see drsa.KeyHierarchy).
+ */
+public class KeyPipeline {
+
+    /**
+     * Number of seed bytes when neither the seed bytes nor the modulus size are given, the one of
+     * the README examples.
+     */
+    public static final int DEFAULT_SEED_BYTES = 512;
+
+    /**
+     * Builder of a pipeline. The password, confusion string and iteration count are required.
+     */
+    public static class Builder {
+        private String password;
+        private String confusion_string;
+        private int iteration_count = -1;
+        private int seed_bytes;
+        private int modulus_bits;
+        private int prime_count = 2;
+        private SetupCache cache;
+        private int setup_threads = 1;
+        private boolean lanes;
+        private Executor prime_executor;
+        private PrimeSearch prime_search = DRSA.default_prime_search;
+        private DerivationListener listener;
+        private long interval_millis;
+
+        private Builder() {
+        }
+
+        public Builder password(String password) {
+            this.password = password;
+            return this;
+        }
+
+        public Builder confusion_string(String confusion_string) {
+            this.confusion_string = confusion_string;
+            return this;
+        }
+
+        public Builder iteration_count(int iteration_count) {
+            this.iteration_count = iteration_count;
+            return this;
+        }
+
+        /** Size of the seed, which sets the size of the key as in rsagen (exclusive with modulus_bits),
+         * between 1 and rsagen.MAX_SEED_BYTES. 0, the default, means DEFAULT_SEED_BYTES when
+         * modulus_bits is not given either.
+         */
+        public Builder seed_bytes(int seed_bytes) {
+            this.seed_bytes = seed_bytes;
+            return this;
+        }
+
+        /** Exact size of the modulus (exclusive with seed_bytes).
+         */
+        public Builder modulus_bits(int modulus_bits) {
+            this.modulus_bits = modulus_bits;
+            return this;
+        }
+
+        /** Number of primes of the modulus, 2 by default; more needs modulus_bits (see
+         * {@link DRSA#DRSA(byte[], int, int, Executor, PrimeSearch)}).
+         */
+        public Builder prime_count(int prime_count) {
+            this.prime_count = prime_count;
+            return this;
+        }
+
+        /** Cache of post-setup states, or null (the default).
+         */
+        public Builder setup_cache(SetupCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /** Number of threads of the setup (see PRBG.parallel_setup()), 1 by default.
+         */
+        public Builder setup_threads(int setup_threads) {
+            this.setup_threads = setup_threads;
+            return this;
+        }
+
+        /** Whether a single threaded setup uses PRBG.lane_setup(), false by default.
+         */
+        public Builder lanes(boolean lanes) {
+            this.lanes = lanes;
+            return this;
+        }
+
+        /** Executor for the search of p, while q is searched on the calling thread, or null (the
+         * default) to search both on the calling thread.
+         */
+        public Builder prime_executor(Executor prime_executor) {
+            this.prime_executor = prime_executor;
+            return this;
+        }
+
+        public Builder prime_search(PrimeSearch prime_search) {
+            this.prime_search = prime_search;
+            return this;
+        }
+
+        /** Receiver of the stages, and of the setup snapshots every interval_millis, or null (the
+         * default). Snapshots are only reported by the single threaded setup without lanes.
+         */
+        public Builder listener(DerivationListener listener, long interval_millis) {
+            this.listener = listener;
+            this.interval_millis = interval_millis;
+            return this;
+        }
+
+        public KeyPipeline build() {
+            if (this.password == null || this.confusion_string == null || this.iteration_count < 0)
+                throw new IllegalStateException("The password, confusion string and iteration count are required");
+            if (this.seed_bytes > 0 && this.modulus_bits > 0)
+                throw new IllegalStateException("Either the seed bytes or the modulus size, not both");
+            if (this.prime_count != 2 && this.modulus_bits <= 0)
+                throw new IllegalStateException("A multi-prime key needs the modulus size");
+            if (this.modulus_bits > 0)
+                DRSA.check_modulus_bits(this.modulus_bits, this.prime_count);
+            else if (this.seed_bytes < 0 || this.seed_bytes > rsagen.MAX_SEED_BYTES)
+                throw new IllegalStateException("The seed must have between 1 and " + rsagen.MAX_SEED_BYTES
+                        + " bytes, or 0 for the default");
+            if (this.setup_threads < 1)
+                throw new IllegalStateException("setup_threads < 1");
+            return new KeyPipeline(this);
+        }
+    }
+
+    private final String password;
+    private final String confusion_string;
+    private final int iteration_count;
+    private final int seed_bytes;
+    private final int modulus_bits;
+    private final int prime_count;
+    private final SetupCache cache;
+    private final int setup_threads;
+    private final boolean lanes;
+    private final Executor prime_executor;
+    private final PrimeSearch prime_search;
+    private final DerivationListener listener;
+    private final long interval_millis;
+
+    private KeyPipeline(Builder builder) {
+        this.password = builder.password;
+        this.confusion_string = builder.confusion_string;
+        this.iteration_count = builder.iteration_count;
+        this.seed_bytes = builder.modulus_bits > 0 || builder.seed_bytes > 0 ? builder.seed_bytes : DEFAULT_SEED_BYTES;
+        this.modulus_bits = builder.modulus_bits;
+        this.prime_count = builder.prime_count;
+        this.cache = builder.cache;
+        this.setup_threads = builder.setup_threads;
+        this.lanes = builder.lanes;
+        this.prime_executor = builder.prime_executor;
+        this.prime_search = builder.prime_search;
+        this.listener = builder.listener;
+        this.interval_millis = builder.interval_millis;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Runs the pipeline.
+     * @return The key pair
+     */
+    public DRSA derive() throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InterruptedException {
+        return this.derive(null);
+    }
+
+    /** Runs the pipeline on the given executor. The prime_executor, if any, is still the one of the
+     * search of p.
+     * @param executor Executor of the derivation
+     * @param timeout_millis Deadline, from now, or 0 for none
+     * @return The future key pair, which stops the derivation when cancelled
+     */
+    public CompletableFuture<DRSA> derive_async(Executor executor, long timeout_millis) {
+        return AsyncDerivation.submit(executor, timeout_millis, this::derive);
+    }
+
+    /** Builds and sets up the generator, and returns the hierarchy of child keys of its post-setup
+     * state, for many key pairs from one setup. The key size options of the pipeline do not apply:
+     * each child is given its own.
+     * @return The hierarchy
+     */
+    public KeyHierarchy hierarchy() throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InterruptedException {
+        return new KeyHierarchy(this.generator(null));
+    }
+
+    /** Builds and sets up the generator of the pipeline on the given executor, for callers that
+     * want its bytes rather than a key pair.
+     * @param executor Executor of the setup
+     * @param timeout_millis Deadline, from now, or 0 for none
+     * @return The future setted up generator, which stops the setup when cancelled
+     */
+    public CompletableFuture<PRBG> generator_async(Executor executor, long timeout_millis) {
+        return AsyncDerivation.submit(executor, timeout_millis, this::generator);
+    }
+
+    private DRSA derive(BooleanSupplier cancelled) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InterruptedException {
+        PRBG prbg = this.generator(cancelled);
+        this.stage(DerivationListener.Stage.PRIME_SEARCH);
+
+        // Each slice of the seed is generated in its own array, that becomes a starting point as is
+        BigInteger[] starts = new BigInteger[this.prime_count];
+        if (this.modulus_bits > 0) {
+            for (int i = 0; i < this.prime_count; i++) {
+                int bits = DRSA.prime_bits(this.modulus_bits, this.prime_count, i);
+                starts[i] = DRSA.prime_start(next_bytes(prbg, (bits + 7) / 8), bits, DRSA.top_bits(this.prime_count));
+            }
+        } else {
+            starts[0] = new BigInteger(1, next_bytes(prbg, this.seed_bytes / 2));
+            starts[1] = new BigInteger(1, next_bytes(prbg, this.seed_bytes - this.seed_bytes / 2));
+        }
+        return new DRSA(starts, this.prime_executor, this.prime_search, cancelled);
+    }
+
+    /** Builds the generator and sets it up, from the cache when it holds the post-setup state.
+     * @param cancelled Cancellation flag, or null
+     */
+    private PRBG generator(BooleanSupplier cancelled) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException, InterruptedException {
+        this.stage(DerivationListener.Stage.PBKDF2);
+        PRBG prbg = new PRBG(this.password, this.confusion_string, this.iteration_count);
+        PRBG.check_cancelled(cancelled);
+        this.stage(DerivationListener.Stage.SETUP);
+        setup(prbg, this.cache, this.setup_threads, this.lanes, null, this.listener, this.interval_millis, cancelled);
+        return prbg;
+    }
+
+    /** Sets up the given generator with the setup that the options select: parallel_setup() with
+     * more than one thread, lane_setup() with lanes, and setup() otherwise, which is the only one to
+     * resume from a snapshot and report snapshots. All of them take the post-setup state from the
+     * cache when it holds it, and store it there otherwise.
+     * @param prbg The generator
+     * @param cache Cache of post-setup states, or null
+     * @param setup_threads Number of threads of the setup
+     * @param lanes Whether a single threaded setup uses lane_setup()
+     * @param resume Snapshot to resume from, or null to start from the beginning
+     * @param listener Receiver of the snapshots, or null
+     * @param interval_millis Minimum time between two snapshots
+     * @param cancelled Cancellation flag, or null
+     */
+    static void setup(PRBG prbg, SetupCache cache, int setup_threads, boolean lanes, SetupState resume,
+                      SetupListener listener, long interval_millis, BooleanSupplier cancelled) throws IOException, InterruptedException {
+        if (setup_threads > 1) {
+            ExecutorService pool = Executors.newFixedThreadPool(setup_threads);
+            try {
+                prbg.parallel_setup(cache, pool, setup_threads, cancelled);
+            } finally {
+                pool.shutdown();
+            }
+        } else if (lanes) {
+            prbg.lane_setup(cache, cancelled);
+        } else {
+            prbg.setup(cache, resume, listener, interval_millis, cancelled);
+        }
+    }
+
+    private void stage(DerivationListener.Stage stage) {
+        if (this.listener != null)
+            this.listener.stage(stage);
+    }
+
+    private static byte[] next_bytes(PRBG prbg, int length) {
+        byte[] bytes = new byte[length];
+        prbg.next_bytes(bytes, 0, length);
+        return bytes;
+    }
+}
@@ -0,0 +1,101 @@
+package drsa;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lock of a keystore file, shared by its readers and exclusive to its writer, across processes.<br>
+ * The lock is taken on a sibling ".lock" file rather than on the keystore itself: on POSIX systems,
+ * closing any channel of a file releases all the locks of the process on it, and readers and
+ * writers open and close channels of the keystore. A process cannot lock a file twice either, so
+ * the readers of a keystore in a process share a single lock, counted here.
+ */
+final class KeyStoreLock {
+
+    /**
+     * Locks held by this process, by real path of the keystore file.
+     */
+    private static final Map<Path, KeyStoreLock> LOCKS = new HashMap<>();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean shared;
+    private int holders;
+
+    private KeyStoreLock(Path path, FileChannel channel, boolean shared) {
+        this.path = path;
+        this.channel = channel;
+        this.shared = shared;
+    }
+
+    /** Takes the lock of the given keystore, which must exist.
+     * @param file The keystore file
+     * @param shared True for a reader, false for a writer
+     * @return The lock, to be released once
+     * @throws IOException If a writer holds the lock, or readers when shared is false
+     */
+    static KeyStoreLock acquire(Path file, boolean shared) throws IOException {
+        Path path = file.toRealPath();
+        synchronized (LOCKS) {
+            KeyStoreLock lock = LOCKS.get(path);
+            if (lock == null) {
+                FileChannel channel = open(path.resolveSibling(path.getFileName() + ".lock"));
+                FileLock file_lock;
+                try {
+                    file_lock = channel.tryLock(0, Long.MAX_VALUE, shared);
+                } catch (IOException | RuntimeException e) {
+                    channel.close();
+                    throw e;
+                }
+                if (file_lock == null) {
+                    channel.close();
+                    throw busy(file, shared);
+                }
+                lock = new KeyStoreLock(path, channel, shared);
+                LOCKS.put(path, lock);
+            } else if (!shared || !lock.shared) {
+                throw busy(file, shared);
+            }
+            lock.holders++;
+            return lock;
+        }
+    }
+
+    /** Releases the lock, once all the readers of this process that share it released it.
+     */
+    void release() throws IOException {
+        synchronized (LOCKS) {
+            if (--this.holders == 0) {
+                LOCKS.remove(this.path);
+                // Also releases the lock
+                this.channel.close();
+            }
+        }
+    }
+
+    private static IOException busy(Path file, boolean shared) {
+        return new IOException(shared ? "The keystore is open by a writer: " + file
+                : "The keystore is open by another writer or by readers: " + file);
+    }
+
+    /** Opens the lock file, creating it readable and writable by its owner only, where the file
+     * system allows it.
+     */
+    private static FileChannel open(Path file) throws IOException {
+        Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return FileChannel.open(file, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+            return FileChannel.open(file, options);
+        }
+    }
+}
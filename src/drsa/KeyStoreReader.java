@@ -0,0 +1,252 @@
+package drsa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reader of a keystore file: many key pairs in a single file, looked up by name in O(1) through a
+ * memory mapping, instead of two PEM files per key (see drsa.KeyStoreWriter).<br>
+ * The file starts with a header of HEADER_SIZE bytes: the magic "DRSAKS01", then as 8 bytes
+ * big-endian integers the end of the records, the offset of the index (0 while a writer has the
+ * file open), its number of slots and the number of keys, and as 4 bytes the size of the largest
+ * record. The records follow, each one made of the key name (2 bytes big-endian length, then the
+ * UTF-8 name), the PKCS#1 DER private key (4 bytes big-endian length, then the DER bytes) and the
+ * CRC-32 of the name and key fields. The index closes the file: an open addressing hash table with
+ * linear probing and a power of two number of slots, at most half full, each slot holding the 64 bit
+ * FNV-1a hash of a name and the offset of its record (0 for an empty slot).<br>
+ * The file is mapped in segments of SEGMENT_SIZE bytes that overlap by the size of the largest
+ * record, so that every record and slot is within a single segment. Instances are thread safe.<br>
+ * A reader holds a shared lock on the keystore until close() (see drsa.KeyStoreLock), and a writer
+ * an exclusive one, so the file is never changed under a mapping: a writer cannot open a keystore
+ * that is being read, nor a reader one that is being written, in this process or another one.
+ */
+public class KeyStoreReader {
+
+    static final byte[] MAGIC = {'D', 'R', 'S', 'A', 'K', 'S', '0', '1'};
+    static final int HEADER_SIZE = 48;
+    static final int SLOT_SIZE = 2 * Long.BYTES;
+    static final int RECORD_OVERHEAD = Short.BYTES + 2 * Integer.BYTES;
+    static final int MAX_NAME_BYTES = 0xffff;
+    static final int MAX_DER_BYTES = 1 << 26;
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final KeyStoreLock lock;
+    private volatile boolean closed;
+    private final MappedByteBuffer[] segments;
+    private final long records_end;
+    private final long index_offset;
+    private final long index_slots;
+    private final long size;
+    private final int max_record;
+
+    /** Maps the given keystore file, which cannot be changed until close().
+     * @param file The keystore file
+     */
+    public KeyStoreReader(Path file) throws IOException {
+        this.lock = KeyStoreLock.acquire(file, true);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0)
+                ;
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            if (header.remaining() < HEADER_SIZE || !Arrays.equals(get(header, magic), MAGIC))
+                throw new IOException("Not a keystore file: " + file);
+            this.records_end = header.getLong();
+            this.index_offset = header.getLong();
+            this.index_slots = header.getLong();
+            this.size = header.getLong();
+            this.max_record = header.getInt();
+            if (this.index_offset == 0)
+                throw new IOException("The keystore was not closed by its writer, open it for writing to recover it: " + file);
+            // Same checks as KeyStoreWriter, so that a corrupted header cannot send a lookup out of
+            // the file or around a full index
+            if (this.records_end < HEADER_SIZE || this.index_offset < this.records_end
+                    || this.index_slots < KeyStoreWriter.MIN_SLOTS || this.index_slots > Integer.MAX_VALUE / SLOT_SIZE
+                    || Long.bitCount(this.index_slots) != 1 || this.size < 0 || 2 * this.size > this.index_slots
+                    || this.max_record < 0 || this.max_record > RECORD_OVERHEAD + MAX_NAME_BYTES + MAX_DER_BYTES)
+                throw new IOException("Corrupted keystore header: " + file);
+            long file_size = channel.size();
+            if (this.index_offset + this.index_slots * SLOT_SIZE > file_size)
+                throw new IOException("Truncated keystore file: " + file);
+
+            long overlap = Math.max(this.max_record, SLOT_SIZE);
+            this.segments = new MappedByteBuffer[(int) ((file_size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < this.segments.length; i++) {
+                long start = (long) i * SEGMENT_SIZE;
+                long length = Math.min(SEGMENT_SIZE + overlap, file_size - start);
+                this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.lock.release();
+            throw e;
+        }
+    }
+
+    /** Releases the lock on the keystore, which writers can then open. The reader cannot be used
+     * afterwards.
+     */
+    public synchronized void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+        this.lock.release();
+    }
+
+    /** Number of keys in the keystore.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /** Looks up the given key.
+     * @param name Name of the key
+     * @return true if the keystore holds a key with this name
+     */
+    public boolean contains(String name) throws IOException {
+        return this.find(name.getBytes(StandardCharsets.UTF_8)) != 0;
+    }
+
+    /** PKCS#1 DER encoding of the private key with the given name, as DRSA.get_private_key_der().
+     * @param name Name of the key
+     * @return A new array with the encoding, or null if there is no such key
+     */
+    public byte[] get_private_key_der(String name) throws IOException {
+        long offset = this.find(name.getBytes(StandardCharsets.UTF_8));
+        return offset == 0 ? null : this.record_der(offset);
+    }
+
+    /** PKCS#1 PEM encoding of the private key with the given name, as rsagen writes it.
+     * @param name Name of the key
+     * @return The PEM block, or null if there is no such key
+     */
+    public String get_private_key_pem(String name) throws IOException {
+        byte[] der = this.get_private_key_der(name);
+        return der == null ? null : Pkcs1Encoder.pem("RSA PRIVATE KEY", der);
+    }
+
+    /** PKCS#1 PEM encoding of the public key with the given name, as rsagen writes it.
+     * @param name Name of the key
+     * @return The PEM block, or null if there is no such key
+     */
+    public String get_public_key_pem(String name) throws IOException {
+        byte[] der = this.get_private_key_der(name);
+        return der == null ? null : Pkcs1Encoder.pem("RSA PUBLIC KEY", Pkcs1Encoder.public_key_der(der));
+    }
+
+    /** Names of all the keys, in the order they were added.
+     * @return A new list with the names
+     */
+    public List<String> names() throws IOException {
+        List<String> names = new ArrayList<>();
+        for (long offset = HEADER_SIZE; offset < this.records_end; ) {
+            ByteBuffer record = this.record(offset);
+            byte[] name = get(record, new byte[record.getShort() & 0xffff]);
+            int der_length = record.getInt();
+            names.add(new String(name, StandardCharsets.UTF_8));
+            offset += RECORD_OVERHEAD + name.length + der_length;
+        }
+        return names;
+    }
+
+    /** Offset of the record of the given name, or 0 if there is none.
+     */
+    private long find(byte[] name) throws IOException {
+        long hash = hash(name);
+        long mask = this.index_slots - 1;
+        // A valid index always has an empty slot, but a corrupted one may not
+        long slot = hash & mask;
+        for (long probe = 0; probe < this.index_slots; probe++, slot = (slot + 1) & mask) {
+            ByteBuffer entry = this.at(this.index_offset + slot * SLOT_SIZE);
+            long slot_hash = entry.getLong();
+            long offset = entry.getLong();
+            if (offset == 0)
+                return 0;
+            if (slot_hash == hash && Arrays.equals(record_name(this.record(offset)), name))
+                return offset;
+        }
+        return 0;
+    }
+
+    /** Buffer positioned at the record at the given offset, after checking that the record lies
+     * within the records and is not larger than the largest one, so that it is within a segment.
+     */
+    private ByteBuffer record(long offset) throws IOException {
+        if (offset < HEADER_SIZE || offset > this.records_end - RECORD_OVERHEAD)
+            throw new IOException("Corrupted keystore index: no record at offset " + offset);
+        ByteBuffer record = this.at(offset);
+        int name_length = record.getShort(record.position()) & 0xffff;
+        if (RECORD_OVERHEAD + name_length > this.max_record)
+            throw new IOException("Corrupted record at offset " + offset);
+        int der_length = record.getInt(record.position() + Short.BYTES + name_length);
+        long record_size = RECORD_OVERHEAD + (long) name_length + der_length;
+        if (der_length < 0 || record_size > this.max_record || offset + record_size > this.records_end)
+            throw new IOException("Corrupted record at offset " + offset);
+        return record;
+    }
+
+    /** DER bytes of the record at the given offset, after checking its CRC.
+     */
+    private byte[] record_der(long offset) throws IOException {
+        ByteBuffer record = this.record(offset);
+        byte[] name = record_name(record);
+        byte[] der = get(record, new byte[record.getInt()]);
+        if (record.getInt() != (int) crc(name, der))
+            throw new IOException("Corrupted record at offset " + offset);
+        return der;
+    }
+
+    /** Buffer positioned at the given offset of the file, in the segment that holds it.
+     */
+    private ByteBuffer at(long offset) {
+        if (this.closed)
+            throw new IllegalStateException("The keystore reader is closed");
+        int segment = (int) (offset / SEGMENT_SIZE);
+        ByteBuffer buffer = this.segments[segment].duplicate();
+        buffer.position((int) (offset - (long) segment * SEGMENT_SIZE));
+        return buffer;
+    }
+
+    private static byte[] record_name(ByteBuffer record) {
+        return get(record, new byte[record.getShort() & 0xffff]);
+    }
+
+    private static byte[] get(ByteBuffer buffer, byte[] bytes) {
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /** 64 bit FNV-1a hash of the given name, which selects its first slot in the index.
+     */
+    static long hash(byte[] name) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : name) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /** CRC-32 of the name and key fields of a record, including their lengths.
+     */
+    static long crc(byte[] name, byte[] der) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(Short.BYTES).putShort((short) name.length).array());
+        crc.update(name);
+        crc.update(ByteBuffer.allocate(Integer.BYTES).putInt(der.length).array());
+        crc.update(der);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,289 @@
+package drsa;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Writer of a keystore file (see drsa.KeyStoreReader for the format). Records are only ever
+ * appended: opening an existing keystore drops its index, and close() writes the index of all the
+ * records after the last one, and then the header that points to it.<br>
+ * The index is kept in memory while writing, 16 bytes per slot. If the writer is not closed, the
+ * header still says so and readers refuse the file; the next writer rebuilds the index from the
+ * records, up to the first one whose CRC does not match, and drops the rest.<br>
+ * A writer holds an exclusive lock on the keystore until it is closed (see drsa.KeyStoreLock), so
+ * a second writer or a reader, in this process or another one, fails to open it, and the writer
+ * fails to open a keystore that readers hold. The keys are stored in clear, so the file is created
+ * readable and writable by its owner only.
+ */
+public class KeyStoreWriter {
+
+    /**
+     * Number of slots of the index of an empty keystore.
+     */
+    static final int MIN_SLOTS = 16;
+
+    private final FileChannel channel;
+    private final KeyStoreLock lock;
+    private long records_end;
+    private long size;
+    private int max_record;
+    private long[] hashes;
+    private long[] offsets;
+
+    /** Opens the keystore stored in the given file for appending, creating it if it does not exist.
+     * @param file The keystore file
+     */
+    public KeyStoreWriter(Path file) throws IOException {
+        this.hashes = new long[MIN_SLOTS];
+        this.offsets = new long[MIN_SLOTS];
+        this.channel = open(file);
+        try {
+            this.lock = KeyStoreLock.acquire(file, false);
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+        try {
+            if (this.channel.size() > 0) {
+                ByteBuffer header = read(this.channel, 0, KeyStoreReader.HEADER_SIZE);
+                byte[] magic = new byte[KeyStoreReader.MAGIC.length];
+                header.get(magic);
+                if (!Arrays.equals(magic, KeyStoreReader.MAGIC))
+                    throw new IOException("Not a keystore file: " + file);
+                long records_end = header.getLong();
+                long index_offset = header.getLong();
+                long index_slots = header.getLong();
+                if (index_offset == 0 || !this.load_index(records_end, index_offset, index_slots, header.getLong(), header.getInt()))
+                    this.scan_records();
+            } else {
+                this.records_end = KeyStoreReader.HEADER_SIZE;
+            }
+            // Mark the keystore as open before the old index goes, so that a crash in between leaves
+            // it to be rebuilt from the records
+            this.write_header(0);
+            this.channel.force(true);
+            this.channel.truncate(this.records_end);
+            this.channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            this.lock.release();
+            throw e;
+        }
+    }
+
+    /** Adds the private key of the given key pair under the given name.
+     * @param name Name of the key, of 1 to 65535 UTF-8 bytes, not already in the keystore
+     * @param drsa The key pair
+     */
+    public void put(String name, DRSA drsa) throws IOException {
+        this.put(name, drsa.get_private_key_der());
+    }
+
+    /** Adds the given private key under the given name.
+     * @param name Name of the key, of 1 to 65535 UTF-8 bytes, not already in the keystore
+     * @param private_key_der PKCS#1 DER encoding of the private key
+     */
+    public synchronized void put(String name, byte[] private_key_der) throws IOException {
+        byte[] name_bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (name_bytes.length < 1 || name_bytes.length > KeyStoreReader.MAX_NAME_BYTES)
+            throw new IllegalArgumentException("The key name must have between 1 and " + KeyStoreReader.MAX_NAME_BYTES + " bytes");
+        if (private_key_der.length < 1 || private_key_der.length > KeyStoreReader.MAX_DER_BYTES)
+            throw new IllegalArgumentException("The private key must have between 1 and " + KeyStoreReader.MAX_DER_BYTES + " bytes");
+        long hash = KeyStoreReader.hash(name_bytes);
+        if (this.find(hash, name_bytes))
+            throw new IllegalArgumentException("The keystore already holds a key named " + name);
+
+        int record_size = KeyStoreReader.RECORD_OVERHEAD + name_bytes.length + private_key_der.length;
+        ByteBuffer record = ByteBuffer.allocate(record_size);
+        record.putShort((short) name_bytes.length);
+        record.put(name_bytes);
+        record.putInt(private_key_der.length);
+        record.put(private_key_der);
+        record.putInt((int) KeyStoreReader.crc(name_bytes, private_key_der));
+        record.flip();
+        write(this.channel, this.records_end, record);
+
+        this.insert(hash, this.records_end);
+        this.records_end += record_size;
+        this.max_record = Math.max(this.max_record, record_size);
+    }
+
+    /** Number of keys in the keystore.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /** Writes the index and the header, and closes the file.
+     */
+    public synchronized void close() throws IOException {
+        ByteBuffer slots = ByteBuffer.allocate(4096 * KeyStoreReader.SLOT_SIZE);
+        long position = this.records_end;
+        for (int i = 0; i < this.offsets.length; i++) {
+            slots.putLong(this.hashes[i]);
+            slots.putLong(this.offsets[i]);
+            if (!slots.hasRemaining() || i == this.offsets.length - 1) {
+                slots.flip();
+                position += write(this.channel, position, slots);
+                slots.clear();
+            }
+        }
+        this.channel.force(true);
+        this.write_header(this.records_end);
+        this.channel.force(true);
+        this.channel.close();
+        this.lock.release();
+    }
+
+    /** Reads the index of a keystore closed by its writer.
+     * @return false if the header does not point to a whole index, which is then to be rebuilt
+     */
+    private boolean load_index(long records_end, long index_offset, long index_slots, long size, int max_record) throws IOException {
+        if (records_end < KeyStoreReader.HEADER_SIZE || index_offset < records_end || index_slots < MIN_SLOTS
+                || index_slots > Integer.MAX_VALUE / KeyStoreReader.SLOT_SIZE || Long.bitCount(index_slots) != 1
+                || index_offset + index_slots * KeyStoreReader.SLOT_SIZE > this.channel.size())
+            return false;
+        ByteBuffer slots = read(this.channel, index_offset, (int) (index_slots * KeyStoreReader.SLOT_SIZE));
+        this.hashes = new long[(int) index_slots];
+        this.offsets = new long[(int) index_slots];
+        for (int i = 0; i < index_slots; i++) {
+            this.hashes[i] = slots.getLong();
+            this.offsets[i] = slots.getLong();
+        }
+        this.records_end = records_end;
+        this.size = size;
+        this.max_record = max_record;
+        return true;
+    }
+
+    /** Rebuilds the index of a keystore whose writer was not closed, from its valid records.
+     */
+    private void scan_records() throws IOException {
+        this.records_end = KeyStoreReader.HEADER_SIZE;
+        this.channel.position(KeyStoreReader.HEADER_SIZE);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel), 1 << 16));
+        long file_size = this.channel.size();
+        try {
+            while (true) {
+                byte[] name = new byte[in.readUnsignedShort()];
+                in.readFully(name);
+                int der_length = in.readInt();
+                long record_size = KeyStoreReader.RECORD_OVERHEAD + (long) name.length + der_length;
+                if (name.length < 1 || der_length < 1 || der_length > KeyStoreReader.MAX_DER_BYTES
+                        || this.records_end + record_size > file_size)
+                    break;
+                byte[] der = new byte[der_length];
+                in.readFully(der);
+                if (in.readInt() != (int) KeyStoreReader.crc(name, der))
+                    break;
+                long hash = KeyStoreReader.hash(name);
+                if (this.find(hash, name))
+                    break;
+                this.insert(hash, this.records_end);
+                this.records_end += record_size;
+                this.max_record = (int) Math.max(this.max_record, record_size);
+            }
+        } catch (EOFException e) {
+            // A torn record, left by an interrupted write
+        }
+    }
+
+    /** Whether the keystore holds a record with the given name.
+     */
+    private boolean find(long hash, byte[] name) throws IOException {
+        int mask = this.offsets.length - 1;
+        for (int slot = (int) hash & mask; this.offsets[slot] != 0; slot = (slot + 1) & mask) {
+            if (this.hashes[slot] != hash)
+                continue;
+            ByteBuffer record = read(this.channel, this.offsets[slot], Short.BYTES + name.length);
+            if ((record.getShort() & 0xffff) != name.length)
+                continue;
+            byte[] record_name = new byte[name.length];
+            record.get(record_name);
+            if (Arrays.equals(record_name, name))
+                return true;
+        }
+        return false;
+    }
+
+    /** Adds a record to the index, doubling it first if that would make it more than half full.
+     */
+    private void insert(long hash, long offset) {
+        if (2 * (this.size + 1) > this.offsets.length) {
+            long[] hashes = this.hashes;
+            long[] offsets = this.offsets;
+            this.hashes = new long[2 * hashes.length];
+            this.offsets = new long[2 * offsets.length];
+            for (int i = 0; i < offsets.length; i++)
+                if (offsets[i] != 0)
+                    this.place(hashes[i], offsets[i]);
+        }
+        this.place(hash, offset);
+        this.size++;
+    }
+
+    private void place(long hash, long offset) {
+        int mask = this.offsets.length - 1;
+        int slot = (int) hash & mask;
+        while (this.offsets[slot] != 0)
+            slot = (slot + 1) & mask;
+        this.hashes[slot] = hash;
+        this.offsets[slot] = offset;
+    }
+
+    /** Writes the header, with the given index offset (0 while the writer is open).
+     */
+    private void write_header(long index_offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(KeyStoreReader.HEADER_SIZE);
+        header.put(KeyStoreReader.MAGIC);
+        header.putLong(this.records_end);
+        header.putLong(index_offset);
+        header.putLong(this.offsets.length);
+        header.putLong(this.size);
+        header.putInt(this.max_record);
+        header.putInt(0);
+        header.flip();
+        write(this.channel, 0, header);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Truncated keystore file");
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int write(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining())
+            written += channel.write(buffer, position + written);
+        return written;
+    }
+
+    /** Opens the given file for reading and writing, creating it readable and writable by its owner
+     * only, where the file system allows it, so that the keys are never exposed.
+     */
+    private static FileChannel open(Path file) throws IOException {
+        Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return FileChannel.open(file, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+            return FileChannel.open(file, options);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package drsa;
+
+/**
+ * Lane-parallel search of a confusion pattern of up to 8 bytes in the xorshift stream of
+ * drsa.PRBG. A round of ROUND_LENGTH positions is cut into LANES consecutive segments, and one
+ * jumped-ahead state per segment is advanced side by side in plain long arrays. The inner loop over
+ * the lanes has no dependency between them and no branch, so the JIT auto-vectorizes it with the
+ * widest SIMD registers of the host (2, 4 or 8 lanes per instruction with SSE, AVX2 or AVX-512),
+ * and runs it as scalar code otherwise.<br>
+ * Matches are only looked for between blocks of BLOCK steps; a block with a hit is replayed for the
+ * lanes that hit, to find the exact position.
+ */
+final class LaneScanner {
+
+    static final int LANES = 256;
+    static final int SEGMENT = 1 << 15;
+    static final int BLOCK = 256;
+    static final long ROUND_LENGTH = (long) LANES * SEGMENT;
+
+    private LaneScanner() {
+    }
+
+    /** Searches the pattern among the positions [from, from + ROUND_LENGTH) of a stream.
+     * @param pattern The pattern bytes, packed with the last one in the lowest 8 bits
+     * @param n Size of the pattern (1-8)
+     * @param start State at the beginning of the stream
+     * @param from First position of the round (at least n - 1)
+     * @return The first position of the round that completes the pattern, or -1
+     */
+    static long search(long pattern, int n, long start, long from) {
+        long mask = n == 8 ? -1L : (1L << (8 * n)) - 1;
+        long[] state = new long[LANES];
+        long[] window = new long[LANES];
+        long[] block_state = new long[LANES];
+        long[] block_window = new long[LANES];
+        long[] hits = new long[LANES];
+        long[] first = new long[LANES];
+
+        // Each lane starts n - 1 bytes before its segment, to fill its window
+        for (int l = 0; l < LANES; l++) {
+            long s = XorShiftJump.jump(start, from + (long) l * SEGMENT - (n - 1));
+            long w = 0;
+            for (int j = 0; j < n - 1; j++) {
+                s = XorShiftJump.step(s);
+                w = (w << 8) | (s & 0xFF);
+            }
+            state[l] = s;
+            window[l] = w;
+            first[l] = -1;
+        }
+
+        for (int offset = 0; offset < SEGMENT; offset += BLOCK) {
+            System.arraycopy(state, 0, block_state, 0, LANES);
+            System.arraycopy(window, 0, block_window, 0, LANES);
+            for (int t = 0; t < BLOCK; t++) {
+                for (int l = 0; l < LANES; l++) {
+                    long s = state[l];
+                    s ^= s << 13;
+                    s ^= s >> 17;
+                    s ^= s << 5;
+                    long w = (window[l] << 8) | (s & 0xFF);
+                    state[l] = s;
+                    window[l] = w;
+                    // All ones when the window matches, zero otherwise
+                    long diff = (w ^ pattern) & mask;
+                    hits[l] |= ~((diff | -diff) >> 63);
+                }
+            }
+
+            for (int l = 0; l < LANES; l++) {
+                if (hits[l] != 0 && first[l] < 0)
+                    first[l] = offset + replay(block_state[l], block_window[l], pattern, mask);
+            }
+            // Lane 0 holds the lowest positions, so its first match is the answer
+            if (first[0] >= 0)
+                break;
+        }
+
+        for (int l = 0; l < LANES; l++) {
+            if (first[l] >= 0)
+                return from + (long) l * SEGMENT + first[l];
+        }
+        return -1;
+    }
+
+    /** Finds the step of a block at which a lane matched.
+     * @return The offset of the matching step in the block
+     */
+    private static int replay(long s, long w, long pattern, long mask) {
+        for (int t = 0; t < BLOCK; t++) {
+            s = XorShiftJump.step(s);
+            w = (w << 8) | (s & 0xFF);
+            if (((w ^ pattern) & mask) == 0)
+                return t;
+        }
+        throw new IllegalStateException("No match to replay");
+    }
+}
@@ -0,0 +1,71 @@
+package drsa;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe record of latency samples, with exact percentiles (nearest rank) and a histogram of
+ * power of two buckets.
+ */
+public class LatencyHistogram {
+
+    private long[] samples = new long[16];
+    private int count;
+    private boolean sorted = true;
+
+    /** Records one sample.
+     * @param nanos Latency, in nanoseconds (from System.nanoTime())
+     */
+    public synchronized void record(long nanos) {
+        if (this.count == this.samples.length)
+            this.samples = Arrays.copyOf(this.samples, 2 * this.count);
+        this.samples[this.count++] = nanos;
+        this.sorted = false;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /** Percentile by the nearest rank method, so that it is always one of the samples.
+     * @param p Percentile, in ]0, 100]
+     * @return The smallest sample that is not below p% of the samples, or 0 without samples
+     */
+    public synchronized long percentile(double p) {
+        if (this.count == 0)
+            return 0;
+        if (!this.sorted) {
+            Arrays.sort(this.samples, 0, this.count);
+            this.sorted = true;
+        }
+        int rank = (int) Math.ceil(p / 100 * this.count);
+        return this.samples[Math.min(Math.max(rank, 1), this.count) - 1];
+    }
+
+    public synchronized long getMax() {
+        return this.percentile(100);
+    }
+
+    public synchronized double getMean() {
+        if (this.count == 0)
+            return 0;
+        double total = 0;
+        for (int i = 0; i < this.count; i++)
+            total += this.samples[i];
+        return total / this.count;
+    }
+
+    /** Histogram of the samples, in buckets of (2^(i-1), 2^i] microseconds.
+     * @return The number of samples of each bucket, up to the one of the largest sample
+     */
+    public synchronized long[] buckets() {
+        long[] buckets = new long[this.count == 0 ? 0 : bucket(this.getMax()) + 1];
+        for (int i = 0; i < this.count; i++)
+            buckets[bucket(this.samples[i])]++;
+        return buckets;
+    }
+
+    private static int bucket(long nanos) {
+        long micros = (nanos + 999) / 1000;
+        return micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+    }
+}
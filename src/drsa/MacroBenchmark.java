@@ -0,0 +1,230 @@
+package drsa;
+
+import drsa.utils.Utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Benchmark mode of randgen: latency of PRBG.setup() for a grid of confusion string sizes and
+ * iteration counts, and throughput of concurrent setups for an increasing number of threads.<br>
+ * Each cell of the grid runs a number of trials, after warm-up setups that are not measured. The
+ * passwords and confusion strings come from a seeded generator, so every run measures the same
+ * setups, and only setup() itself is timed, with System.nanoTime().
+ */
+public class MacroBenchmark {
+
+    /**
+     * Seed of the passwords and confusion strings.
+     */
+    static final long INPUTS_SEED = 0x4452534142L;
+    static final int PASSWORD_LENGTH = 10;
+
+    /**
+     * Setup run by every thread of the concurrency sweep: long enough to dwarf the coordination,
+     * short enough to run many.
+     */
+    static final int SWEEP_CS_SIZE = 3;
+    static final int SWEEP_IC = 1;
+
+    /**
+     * Latencies of one cell of the grid, or of one concurrency level of the sweep.
+     */
+    public static class Cell {
+        final String kind;
+        final int cs_size;
+        final int iteration_count;
+        final int concurrency;
+        final LatencyHistogram latency = new LatencyHistogram();
+        double setups_per_second;
+
+        Cell(String kind, int cs_size, int iteration_count, int concurrency) {
+            this.kind = kind;
+            this.cs_size = cs_size;
+            this.iteration_count = iteration_count;
+            this.concurrency = concurrency;
+        }
+    }
+
+    private final int trials;
+    private final int warmup;
+    private final int max_cs_size;
+    private final int[] ic_counts;
+    private final int max_concurrency;
+
+    /**
+     * @param trials Measured setups per cell, and per thread at the top of the sweep
+     * @param warmup Setups per confusion string size before the measures
+     * @param max_cs_size Largest confusion string size of the grid (from 1)
+     * @param ic_counts Iteration counts of the grid
+     * @param max_concurrency Largest number of concurrent setups of the sweep
+     */
+    public MacroBenchmark(int trials, int warmup, int max_cs_size, int[] ic_counts, int max_concurrency) {
+        if (trials < 1 || warmup < 0 || max_cs_size < 1 || ic_counts.length == 0 || max_concurrency < 1)
+            throw new IllegalArgumentException("Invalid benchmark parameters");
+        this.trials = trials;
+        this.warmup = warmup;
+        this.max_cs_size = max_cs_size;
+        this.ic_counts = ic_counts.clone();
+        this.max_concurrency = max_concurrency;
+    }
+
+    /** Runs the warm-up setups, then the trials of every cell of the grid.
+     * @param log Receiver of one line per cell
+     * @return The cells, by iteration count then confusion string size
+     */
+    public List<Cell> run_grid(PrintStream log) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        for (int cs_size = 1; cs_size <= this.max_cs_size; cs_size++) {
+            for (String[] input : inputs("warmup", cs_size, this.warmup)) {
+                new PRBG(input[0], input[1], 1).setup();
+            }
+        }
+
+        List<Cell> cells = new ArrayList<>();
+        for (int ic : this.ic_counts) {
+            for (int cs_size = 1; cs_size <= this.max_cs_size; cs_size++) {
+                Cell cell = new Cell("grid", cs_size, ic, 1);
+                long total = 0;
+                for (String[] input : inputs("grid", cs_size, this.trials)) {
+                    PRBG prbg = new PRBG(input[0], input[1], ic);
+                    long start = System.nanoTime();
+                    prbg.setup();
+                    long nanos = System.nanoTime() - start;
+                    cell.latency.record(nanos);
+                    total += nanos;
+                }
+                cell.setups_per_second = this.trials / (total / 1e9);
+                cells.add(cell);
+                log.println(summary(cell));
+            }
+        }
+        return cells;
+    }
+
+    /** Runs the same max_concurrency * trials setups on 1, 2, 4, ... up to max_concurrency threads
+     * at once, each thread taking every threads-th setup.
+     * @param log Receiver of one line per concurrency level
+     * @return The concurrency levels
+     */
+    public List<Cell> run_sweep(PrintStream log) throws InterruptedException {
+        List<String[]> inputs = inputs("sweep", SWEEP_CS_SIZE, this.max_concurrency * this.trials);
+        List<Cell> cells = new ArrayList<>();
+        for (int threads = 1; ; threads = Math.min(2 * threads, this.max_concurrency)) {
+            Cell cell = new Cell("sweep", SWEEP_CS_SIZE, SWEEP_IC, threads);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CountDownLatch ready = new CountDownLatch(threads);
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                int step = threads;
+                Callable<Void> task = () -> {
+                    ready.countDown();
+                    go.await();
+                    for (int i = first; i < inputs.size(); i += step) {
+                        String[] input = inputs.get(i);
+                        PRBG prbg = new PRBG(input[0], input[1], SWEEP_IC);
+                        long start = System.nanoTime();
+                        prbg.setup();
+                        cell.latency.record(System.nanoTime() - start);
+                    }
+                    return null;
+                };
+                results.add(pool.submit(task));
+            }
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            try {
+                for (Future<Void> result : results)
+                    result.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+            cell.setups_per_second = inputs.size() / ((System.nanoTime() - start) / 1e9);
+            cells.add(cell);
+            log.println(summary(cell));
+            if (threads == this.max_concurrency)
+                break;
+        }
+        return cells;
+    }
+
+    /** The same passwords and confusion strings on every run, for the given purpose and size.
+     */
+    private static List<String[]> inputs(String purpose, int cs_size, int count) {
+        Random random = new Random(INPUTS_SEED ^ ((long) purpose.hashCode() << 8) ^ cs_size);
+        List<String[]> inputs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            inputs.add(new String[]{Utils.randomString(PASSWORD_LENGTH, random), Utils.randomString(cs_size, random)});
+        return inputs;
+    }
+
+    static String summary(Cell cell) {
+        LatencyHistogram l = cell.latency;
+        return String.format(Locale.ROOT, "%s\tcs_size=%d\tic=%d\tthreads=%d\tn=%d\tp50_ms=%.3f\tp90_ms=%.3f\tp99_ms=%.3f\tmax_ms=%.3f\tsetups_per_s=%.2f",
+                cell.kind, cell.cs_size, cell.iteration_count, cell.concurrency, l.getCount(),
+                l.percentile(50) / 1e6, l.percentile(90) / 1e6, l.percentile(99) / 1e6, l.getMax() / 1e6,
+                cell.setups_per_second);
+    }
+
+    /** Writes one line per cell, with a header.
+     */
+    public static void write_csv(List<Cell> cells, Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("kind,cs_size,ic,threads,n,mean_ms,p50_ms,p90_ms,p99_ms,max_ms,setups_per_s\n");
+            for (Cell cell : cells) {
+                LatencyHistogram l = cell.latency;
+                writer.write(String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f%n",
+                        cell.kind, cell.cs_size, cell.iteration_count, cell.concurrency, l.getCount(),
+                        l.getMean() / 1e6, l.percentile(50) / 1e6, l.percentile(90) / 1e6,
+                        l.percentile(99) / 1e6, l.getMax() / 1e6, cell.setups_per_second));
+            }
+        }
+    }
+
+    /** Writes an array of cells, each one with its percentiles and its histogram (number of
+     * samples in the buckets of up to 1, 2, 4, 8, ... microseconds).
+     */
+    public static void write_json(List<Cell> cells, Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("[\n");
+            for (int i = 0; i < cells.size(); i++) {
+                Cell cell = cells.get(i);
+                LatencyHistogram l = cell.latency;
+                StringBuilder histogram = new StringBuilder();
+                long[] buckets = l.buckets();
+                for (int b = 0; b < buckets.length; b++) {
+                    if (buckets[b] != 0)
+                        histogram.append(histogram.length() == 0 ? "" : ", ")
+                                .append(String.format("{\"le_us\": %d, \"count\": %d}", 1L << b, buckets[b]));
+                }
+                writer.write(String.format(Locale.ROOT,
+                        "  {\"kind\": \"%s\", \"cs_size\": %d, \"ic\": %d, \"threads\": %d, \"n\": %d, "
+                                + "\"mean_ns\": %.0f, \"p50_ns\": %d, \"p90_ns\": %d, \"p99_ns\": %d, \"max_ns\": %d, "
+                                + "\"setups_per_s\": %.3f, \"histogram\": [%s]}%s%n",
+                        cell.kind, cell.cs_size, cell.iteration_count, cell.concurrency, l.getCount(),
+                        l.getMean(), l.percentile(50), l.percentile(90), l.percentile(99), l.getMax(),
+                        cell.setups_per_second, histogram, i + 1 < cells.size() ? "," : ""));
+            }
+            writer.write("]\n");
+        }
+    }
+}
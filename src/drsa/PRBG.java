@@ -1,9 +1,13 @@
 package drsa;
 
-import drsa.utils.Buffer;
+import drsa.events.ConfusionPatternEvent;
+import drsa.events.Pbkdf2Event;
+import drsa.events.SetupEvent;
+import drsa.utils.RollingPattern;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
@@ -11,6 +15,13 @@ import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 /**
  * Pseudo-random Byte Generator (PRGB) that uses PBKDF2 and a XorShift implementation
@@ -19,21 +30,43 @@ import java.util.List;
  */
 public class PRBG {
 
+    /**
+     * Number of bytes scanned between two looks at the clock, when setting up with a listener, and
+     * between two polls of the cancellation flag.
+     */
+    static final int SCAN_CHUNK = 1 << 20;
+
+    /**
+     * Default distance between the generators returned by split(k).
+     */
+    public static final long SPLIT_STRIDE = 1L << 40;
+
+    /**
+     * Number of bytes scanned by each worker in each round of parallel_setup().
+     */
+    static final int PARALLEL_CHUNK = 1 << 22;
+
     /**
      * The seed is a 64bit integer.
      */
     private long seed;
     private int iteration_count;
-    private Buffer confusion_pattern;
+    private int[] confusion_pattern;
 
 
     /**
      * Holds the sliding window of bytes to be compared with the confusion pattern, when the
      * generator is being setted up.
      */
-    private Buffer current_pattern;
+    private RollingPattern current_pattern;
     private boolean setted_up;
 
+    /**
+     * SHA-256 of the PBKDF2 output and of the iteration count, which identifies the post-setup
+     * state without keeping the password around.
+     */
+    private byte[] inputs_digest;
+
     /** Initialization of the generator, which includes the computation of the confusion pattern and
      * the seed.
      * @param password A textual password
@@ -41,19 +74,58 @@ public class PRBG {
      * @param iteration_count Number of times that the generator will search for the confusion pattern
      */
     public PRBG(String password, String confusion_string, int iteration_count) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        Pbkdf2Event pbkdf2 = new Pbkdf2Event();
+        pbkdf2.begin();
         byte[] bytes_seed = compute_seed(password, confusion_string, iteration_count);
+        pbkdf2.end();
+        if (pbkdf2.shouldCommit()) {
+            pbkdf2.iteration_count = iteration_count;
+            pbkdf2.seed_bytes = bytes_seed.length;
+            pbkdf2.commit();
+        }
         BigInteger bi = new BigInteger(bytes_seed);
         this.seed = bi.and(new BigInteger("4294967295")).longValue();
         this.iteration_count = iteration_count;
+        ConfusionPatternEvent pattern = new ConfusionPatternEvent();
+        pattern.begin();
         this.confusion_pattern = get_confusion_pattern(confusion_string);
-        this.current_pattern = new Buffer(this.confusion_pattern.getSize());
+        pattern.end();
+        if (pattern.shouldCommit()) {
+            pattern.pattern_size = this.confusion_pattern.length;
+            pattern.commit();
+        }
+        this.current_pattern = new RollingPattern(this.confusion_pattern);
         this.setted_up = false;
+        this.inputs_digest = compute_inputs_digest(bytes_seed, iteration_count);
+    }
+
+    /** Copy of the given generator, at the given state.
+     */
+    private PRBG(PRBG other, long seed) {
+        this.seed = seed;
+        this.iteration_count = other.iteration_count;
+        this.confusion_pattern = other.confusion_pattern;
+        this.current_pattern = new RollingPattern(other.confusion_pattern);
+        this.setted_up = other.setted_up;
+        this.inputs_digest = other.inputs_digest;
     }
 
     public long getSeed() {
         return seed;
     }
 
+    public byte[] getInputsDigest() {
+        return inputs_digest.clone();
+    }
+
+    public int getConfusionPatternSize() {
+        return confusion_pattern.length;
+    }
+
+    public boolean isSettedUp() {
+        return setted_up;
+    }
+
     /*
     // Testing purposes
     public static void main(String args[]) throws Exception {
@@ -85,6 +157,79 @@ public class PRBG {
         return final_byte;
     }
 
+    /** Fills a block of the given array with the next bytes of the generator. The bytes are the
+     * same that successive next_byte() calls would return, cast to byte.
+     * @param bytes The destination array
+     * @param off The first position to fill
+     * @param len The number of bytes to generate
+     */
+    public void next_bytes(byte[] bytes, int off, int len) {
+        if (off < 0 || len < 0 || len > bytes.length - off)
+            throw new IndexOutOfBoundsException();
+        long s = this.seed;
+        for (int i = off; i < off + len; i++) {
+            s ^= s << 13;
+            s ^= s >> 17;
+            s ^= s << 5;
+            bytes[i] = (byte) s;
+        }
+        this.seed = s;
+    }
+
+    /** Fills the remaining space of the given buffer with the next bytes of the generator,
+     * advancing its position to the limit.
+     * @param buffer The destination buffer
+     */
+    public void next_bytes(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int len = buffer.remaining();
+            next_bytes(buffer.array(), buffer.arrayOffset() + buffer.position(), len);
+            buffer.position(buffer.position() + len);
+        } else {
+            while (buffer.hasRemaining())
+                buffer.put((byte) this.next_byte());
+        }
+    }
+
+    /** Advances the generator as if next_byte() had been called the given number of times, in
+     * O(log steps) time.
+     * @param steps Number of bytes to skip (non-negative)
+     */
+    public void jump(long steps) {
+        this.seed = XorShiftJump.jump(this.seed, steps);
+    }
+
+    /** Creates k independent generators, positioned at the offsets 0, stride, 2 * stride, ... of the
+     * stream of this generator, which is left unchanged. If generator i produces the bytes
+     * [i * stride, (i + 1) * stride) of the stream, the concatenation of their outputs is the same as
+     * the output of this generator alone. Each generator may be used by a different thread.
+     * @param k Number of generators
+     * @param stride Number of bytes between the starting positions of two consecutive generators
+     * @return The k generators
+     */
+    public PRBG[] split(int k, long stride) {
+        if (k < 1)
+            throw new IllegalArgumentException("k < 1");
+        if (stride < 0 || (k > 1 && stride > Long.MAX_VALUE / (k - 1)))
+            throw new IllegalArgumentException("Invalid stride " + stride);
+        PRBG[] generators = new PRBG[k];
+        long state = this.seed;
+        for (int i = 0; i < k; i++) {
+            generators[i] = new PRBG(this, state);
+            state = XorShiftJump.jump(state, stride);
+        }
+        return generators;
+    }
+
+    /** Same as split(k, SPLIT_STRIDE): k generators, each one with 2^40 bytes (1TB) of the stream
+     * before the starting position of the next one.
+     * @param k Number of generators
+     * @return The k generators
+     */
+    public PRBG[] split(int k) {
+        return this.split(k, SPLIT_STRIDE);
+    }
+
     /** Resseeds the generator
      * @param seed An arbitrary array of bytes
      */
@@ -100,22 +245,372 @@ public class PRBG {
      * the generator is reseeded.
      */
     public void setup() {
+        SetupEvent event = new SetupEvent();
+        event.begin();
+        long scanned = 0;
         for (int i = 0; i < this.iteration_count; i++) {
-            while (true){
-                this.current_pattern.add(this.next_byte());
-                if (this.confusion_pattern.equals(this.current_pattern)){
-                    ByteBuffer byte_buffer = ByteBuffer.allocate(64);
-                    for (int k = 0; k < 64; k++) {
-                        long b = this.next_byte();
-                        if (b >= 128)
-                            b = b - 256;
-                        byte_buffer.put(Byte.parseByte(String.valueOf(b)));
-                    }
-                    this.reseed(byte_buffer.array());
+            do {
+                scanned++;
+            } while (!this.current_pattern.push(this.next_byte()));
+            byte[] new_seed = new byte[64];
+            this.next_bytes(new_seed, 0, new_seed.length);
+            this.reseed(new_seed);
+        }
+        this.setted_up = true;
+        this.commit_setup(event, "setup", scanned, this.iteration_count, false);
+    }
+
+    /** Same as setup(), but the post-setup state is taken from the given cache when present, and
+     * stored in it otherwise.
+     * @param cache Cache of post-setup states
+     */
+    public void setup(SetupCache cache) throws IOException {
+        this.setup(cache, null, null, 0);
+    }
+
+    /** Same as setup(), but starting from the given snapshot, and reporting snapshots to the given
+     * listener every interval_millis and once more at the end. Resuming from a snapshot produces the
+     * same state as an uninterrupted setup.
+     * @param resume Snapshot to resume from, or null to start from the beginning
+     * @param listener Receiver of the snapshots, or null
+     * @param interval_millis Minimum time between two snapshots
+     */
+    public void setup(SetupState resume, SetupListener listener, long interval_millis) throws IOException {
+        this.setup(null, resume, listener, interval_millis);
+    }
+
+    /** Combination of setup(SetupCache) and setup(SetupState, SetupListener, long). When the cache
+     * holds the post-setup state, the snapshot and the listener are not used.
+     * @param cache Cache of post-setup states, or null
+     * @param resume Snapshot to resume from, or null to start from the beginning
+     * @param listener Receiver of the snapshots, or null
+     * @param interval_millis Minimum time between two snapshots
+     */
+    public void setup(SetupCache cache, SetupState resume, SetupListener listener, long interval_millis) throws IOException {
+        this.setup(cache, resume, listener, interval_millis, null);
+    }
+
+    /** Same as setup(SetupCache, SetupState, SetupListener, long), but the given flag is polled at
+     * the beginning of each iteration and between chunks of SCAN_CHUNK bytes, and the setup stops
+     * with a CancellationException as soon as it is raised. The generator is then left in an
+     * intermediate state, which the last snapshot given to the listener can resume from.
+     * @param cache Cache of post-setup states, or null
+     * @param resume Snapshot to resume from, or null to start from the beginning
+     * @param listener Receiver of the snapshots, or null
+     * @param interval_millis Minimum time between two snapshots
+     * @param cancelled Cancellation flag, or null
+     */
+    public void setup(SetupCache cache, SetupState resume, SetupListener listener, long interval_millis,
+                      BooleanSupplier cancelled) throws IOException {
+        SetupEvent event = new SetupEvent();
+        event.begin();
+        if (cache != null) {
+            Long state = cache.get(this.inputs_digest);
+            if (state != null) {
+                this.seed = state;
+                this.setted_up = true;
+                this.commit_setup(event, "setup", 0, 0, true);
+                return;
+            }
+        }
+
+        int start = 0;
+        long scanned = 0;
+        if (resume != null) {
+            if (resume.getIterationCount() != this.iteration_count)
+                throw new IllegalArgumentException("Snapshot of a setup with a different iteration count");
+            this.seed = resume.getSeed();
+            this.current_pattern.restore(resume.getWindow());
+            start = resume.getIteration();
+            scanned = resume.getBytesScanned();
+        }
+        long resumed_scanned = scanned;
+
+        long interval = interval_millis * 1000000L;
+        long last_report = System.nanoTime();
+        for (int i = start; i < this.iteration_count; i++) {
+            check_cancelled(cancelled);
+            boolean found = false;
+            while (!found) {
+                // Scan in chunks, and only look at the clock and the flag between them
+                long chunk_end = scanned + SCAN_CHUNK;
+                while (!found && scanned < chunk_end) {
+                    found = this.current_pattern.push(this.next_byte());
+                    scanned++;
+                }
+                if (found)
                     break;
+                check_cancelled(cancelled);
+                if (listener != null && System.nanoTime() - last_report >= interval) {
+                    listener.progress(this.snapshot(i, scanned));
+                    last_report = System.nanoTime();
                 }
             }
+            byte[] new_seed = new byte[64];
+            this.next_bytes(new_seed, 0, new_seed.length);
+            this.reseed(new_seed);
         }
+        this.setted_up = true;
+
+        this.commit_setup(event, "setup", scanned - resumed_scanned, this.iteration_count - start, false);
+
+        if (listener != null)
+            listener.progress(this.snapshot(this.iteration_count, scanned));
+        if (cache != null)
+            cache.put(this.inputs_digest, this.seed);
+    }
+
+    /** Sets up the generator from its post-setup state, as getSeed() returns it right after any
+     * setup of a generator with the same inputs (for instance kept by a SetupCache), without
+     * searching for the confusion pattern again.
+     * @param state The post-setup state
+     */
+    public void restore_setup(long state) {
+        SetupEvent event = new SetupEvent();
+        event.begin();
+        this.seed = state;
+        this.setted_up = true;
+        this.commit_setup(event, "restore_setup", 0, 0, true);
+    }
+
+    /** Same as setup(), but each search for the confusion pattern is split among the given number of
+     * workers. The xorshift state is jumped ahead so that, in each round, worker w scans the bytes
+     * [base + w * PARALLEL_CHUNK, base + (w + 1) * PARALLEL_CHUNK) of the iteration, and the lowest
+     * match wins. The resulting state is the same as the one of setup().
+     * @param executor Executor for the workers (e.g. ForkJoinPool.commonPool())
+     * @param workers Number of concurrent workers; with 1, this is the same as setup()
+     */
+    public void parallel_setup(ExecutorService executor, int workers) throws InterruptedException {
+        this.parallel_setup(executor, workers, null);
+    }
+
+    /** Same as parallel_setup(ExecutorService, int), but the given flag is polled between rounds,
+     * and the setup stops with a CancellationException as soon as it is raised.
+     * @param executor Executor for the workers
+     * @param workers Number of concurrent workers
+     * @param cancelled Cancellation flag, or null
+     */
+    public void parallel_setup(ExecutorService executor, int workers, BooleanSupplier cancelled) throws InterruptedException {
+        // Patterns found in less than a chunk on average are not worth the coordination
+        if (workers <= 1 || Math.pow(256, this.confusion_pattern.length) < PARALLEL_CHUNK) {
+            this.scalar_setup(cancelled);
+            return;
+        }
+        this.jumping_setup("parallel_setup", (start, from) -> {
+            AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+            List<Callable<Long>> tasks = new ArrayList<>(workers);
+            for (int w = 0; w < workers; w++) {
+                long segment = from + w * (long) PARALLEL_CHUNK;
+                tasks.add(() -> this.scan(start, segment, segment + PARALLEL_CHUNK, best));
+            }
+            long match = -1;
+            for (Future<Long> result : executor.invokeAll(tasks)) {
+                long position;
+                try {
+                    position = result.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                if (position >= 0 && (match < 0 || position < match))
+                    match = position;
+            }
+            return match;
+        }, workers * (long) PARALLEL_CHUNK, cancelled);
+    }
+
+    /** Same as setup(), but the confusion pattern is searched by LaneScanner, which advances
+     * LaneScanner.LANES jumped-apart xorshift states side by side so that the JIT can run them in
+     * SIMD registers. Patterns longer than 8 bytes, and patterns found in less than a round on
+     * average, use the scalar loop of setup(). The resulting state is the same as the one of setup().
+     */
+    public void lane_setup() {
+        this.lane_setup(null);
+    }
+
+    /** Same as lane_setup(), but the given flag is polled between rounds, and the setup stops with a
+     * CancellationException as soon as it is raised.
+     * @param cancelled Cancellation flag, or null
+     */
+    public void lane_setup(BooleanSupplier cancelled) {
+        int n = this.confusion_pattern.length;
+        if (n > 8 || Math.pow(256, n) < LaneScanner.ROUND_LENGTH) {
+            this.scalar_setup(cancelled);
+            return;
+        }
+        long packed = 0;
+        for (int b : this.confusion_pattern)
+            packed = (packed << 8) | b;
+        long pattern = packed;
+        try {
+            this.jumping_setup("lane_setup", (start, from) -> LaneScanner.search(pattern, n, start, from),
+                    LaneScanner.ROUND_LENGTH, cancelled);
+        } catch (InterruptedException e) {
+            // The lane search itself never waits
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Same as parallel_setup(ExecutorService, int, BooleanSupplier), but the post-setup state is
+     * taken from the given cache when present, and stored in it otherwise.
+     * @param cache Cache of post-setup states, or null
+     * @param executor Executor for the workers
+     * @param workers Number of concurrent workers
+     * @param cancelled Cancellation flag, or null
+     */
+    public void parallel_setup(SetupCache cache, ExecutorService executor, int workers, BooleanSupplier cancelled)
+            throws IOException, InterruptedException {
+        if (this.restore_setup(cache))
+            return;
+        this.parallel_setup(executor, workers, cancelled);
+        if (cache != null)
+            cache.put(this.inputs_digest, this.seed);
+    }
+
+    /** Same as lane_setup(BooleanSupplier), but the post-setup state is taken from the given cache
+     * when present, and stored in it otherwise.
+     * @param cache Cache of post-setup states, or null
+     * @param cancelled Cancellation flag, or null
+     */
+    public void lane_setup(SetupCache cache, BooleanSupplier cancelled) throws IOException {
+        if (this.restore_setup(cache))
+            return;
+        this.lane_setup(cancelled);
+        if (cache != null)
+            cache.put(this.inputs_digest, this.seed);
+    }
+
+    /** restore_setup(long) from the state held by the given cache, if any.
+     * @return Whether the cache held the post-setup state
+     */
+    private boolean restore_setup(SetupCache cache) throws IOException {
+        Long state = cache != null ? cache.get(this.inputs_digest) : null;
+        if (state == null)
+            return false;
+        this.restore_setup(state);
+        return true;
+    }
+
+    /** setup(), or its chunked loop when there is a flag to poll.
+     */
+    private void scalar_setup(BooleanSupplier cancelled) {
+        if (cancelled == null) {
+            this.setup();
+            return;
+        }
+        try {
+            this.setup(null, null, null, 0, cancelled);
+        } catch (IOException e) {
+            // Only the cache and the listener do I/O
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Throws a CancellationException if the given flag is raised.
+     * @param cancelled Cancellation flag, or null
+     */
+    static void check_cancelled(BooleanSupplier cancelled) {
+        if (cancelled != null && cancelled.getAsBoolean())
+            throw new CancellationException("Cancelled");
+    }
+
+    /**
+     * Search of the confusion pattern among a round of positions of an iteration.
+     */
+    private interface RoundSearch {
+        /**
+         * @param start State at the beginning of the iteration
+         * @param from First position of the round
+         * @return The first position of the round that completes the pattern, or -1
+         */
+        long search(long start, long from) throws InterruptedException;
+    }
+
+    /** Setup loop shared by the searches that jump the generator ahead instead of stepping through
+     * every byte. The first n - 1 bytes of each iteration may complete a window started in the
+     * previous iteration, so they are scanned first; from there on, the window only holds bytes of
+     * the iteration, and consecutive rounds of round_length positions are given to the search.
+     * @param method Name of the setup method, for the setup event
+     * @param round The search of a round
+     * @param round_length Number of positions of each round
+     * @param cancelled Cancellation flag, polled between rounds, or null
+     */
+    private void jumping_setup(String method, RoundSearch round, long round_length, BooleanSupplier cancelled) throws InterruptedException {
+        SetupEvent event = new SetupEvent();
+        event.begin();
+        long scanned = 0;
+        int n = this.confusion_pattern.length;
+        for (int i = 0; i < this.iteration_count; i++) {
+            long start = this.seed;
+            long match = -1;
+
+            for (int j = 0; j < n - 1 && match < 0; j++) {
+                if (this.current_pattern.push(this.next_byte()))
+                    match = j;
+            }
+            for (long base = n - 1; match < 0; base += round_length) {
+                check_cancelled(cancelled);
+                match = round.search(start, base);
+            }
+            scanned += match + 1;
+
+            if (match >= n - 1) {
+                // Move to the byte that completed the pattern, with the pattern as window
+                this.seed = XorShiftJump.jump(start, match + 1);
+                this.current_pattern.restore(this.confusion_pattern);
+            }
+            byte[] new_seed = new byte[64];
+            this.next_bytes(new_seed, 0, new_seed.length);
+            this.reseed(new_seed);
+        }
+        this.setted_up = true;
+        this.commit_setup(event, method, scanned, this.iteration_count, false);
+    }
+
+    /** Ends the given setup event, and commits it with the given figures if it is recorded.
+     */
+    private void commit_setup(SetupEvent event, String method, long scanned, int hits, boolean cache_hit) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = method;
+            event.iteration_count = this.iteration_count;
+            event.pattern_size = this.confusion_pattern.length;
+            event.bytes_scanned = scanned;
+            event.pattern_hits = hits;
+            event.cache_hit = cache_hit;
+            event.commit();
+        }
+    }
+
+    /** Searches the confusion pattern among the bytes [from, to) of the stream that starts at the
+     * given state, with the window holding only bytes of that stream.
+     * @param start State at the beginning of the stream
+     * @param from First position (at least pattern size - 1)
+     * @param to Last position (exclusive)
+     * @param best Lowest match found so far by any worker, to give up early
+     * @return The position of the first byte that completes the pattern, or -1
+     */
+    private long scan(long start, long from, long to, AtomicLong best) {
+        int n = this.confusion_pattern.length;
+        RollingPattern window = new RollingPattern(this.confusion_pattern);
+        long s = XorShiftJump.jump(start, from - (n - 1));
+        for (int j = 0; j < n - 1; j++) {
+            s = XorShiftJump.step(s);
+            window.push(s & 0xFF);
+        }
+        for (long position = from; position < to; position++) {
+            s = XorShiftJump.step(s);
+            if (window.push(s & 0xFF)) {
+                best.accumulateAndGet(position, Math::min);
+                return position;
+            }
+            if ((position & 0xFFFF) == 0 && best.get() < from)
+                return -1;
+        }
+        return -1;
+    }
+
+    private SetupState snapshot(int iteration, long scanned) {
+        return new SetupState(iteration, this.iteration_count, scanned, this.seed, this.current_pattern.getContents());
     }
 
     /** Computes the drsa.PRBG seed with the PBKDF2 method.
@@ -134,13 +629,25 @@ public class PRBG {
         return spec1.getEncoded();
     }
 
+    /** Computes the digest that identifies the inputs of the generator.
+     * @param bytes_seed The PBKDF2 output, which depends on the password and the confusion string
+     * @param iteration_count Number of times that the generator will search for the confusion pattern
+     * @return A 32 bytes SHA-256 digest
+     */
+    private byte[] compute_inputs_digest(byte[] bytes_seed, int iteration_count) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(bytes_seed);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(iteration_count).array());
+        return digest.digest();
+    }
+
     /** Generates the confusion pattern, from the given confusion string.
      * The confusion pattern is the result of a slice of the SHA-256 digest of the
      * confusion string.
      * @param confusion_string A string to add complexity, which will influence the confusion pattern
-     * @return A Buffer containing the confusion pattern
+     * @return An array with the bytes (0-255) of the confusion pattern
      */
-    private Buffer get_confusion_pattern(String confusion_string) throws NoSuchAlgorithmException {
+    private int[] get_confusion_pattern(String confusion_string) throws NoSuchAlgorithmException {
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
         byte[] cs_bytes = digest.digest(confusion_string.getBytes());
         ArrayList<Integer> al = new ArrayList<>();
@@ -153,11 +660,11 @@ public class PRBG {
         }
         int index = sum % (count - confusion_string.length());
         List<Integer> cs = al.subList(index,index+confusion_string.length());
-        Buffer b = new Buffer(confusion_string.length());
-        for(Integer i : cs) {
-            b.add(i.longValue());
+        int[] pattern = new int[cs.size()];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = cs.get(i);
         }
-        return b;
+        return pattern;
     }
 }
 
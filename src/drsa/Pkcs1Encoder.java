@@ -0,0 +1,182 @@
+package drsa;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * PKCS#1 (RFC 8017, appendix A.1) DER and PEM encoder of RSA keys, writing the ASN.1 structures
+ * directly from the key parameters: an RSAPublicKey is SEQUENCE {n, e}, and an RSAPrivateKey is
+ * SEQUENCE {0, n, e, d, p, q, dp, dq, qinv}, or SEQUENCE {1, n, e, d, p, q, dp, dq, qinv,
+ * SEQUENCE OF SEQUENCE {ri, di, ti}} for a multi-prime key. The result is byte for byte the one of
+ * the KeyFactory and BouncyCastle round trip that rsagen used before.
+ */
+public class Pkcs1Encoder {
+
+    private static final byte SEQUENCE = 0x30;
+    private static final byte INTEGER = 0x02;
+
+    /**
+     * Base64 line length and line separator of PEM files, as written by BouncyCastle's PemWriter.
+     */
+    static final int PEM_LINE_LENGTH = 64;
+    static final String PEM_LINE_SEPARATOR = System.lineSeparator();
+
+    private Pkcs1Encoder() {
+    }
+
+    /** DER encoding of an RSAPublicKey.
+     */
+    public static byte[] public_key_der(BigInteger n, BigInteger e) {
+        return der(n, e);
+    }
+
+    /** DER encoding of an RSAPrivateKey, version 0 (two primes).
+     */
+    public static byte[] private_key_der(BigInteger n, BigInteger e, BigInteger d, BigInteger p, BigInteger q,
+                                         BigInteger dp, BigInteger dq, BigInteger qinv) {
+        return der(BigInteger.ZERO, n, e, d, p, q, dp, dq, qinv);
+    }
+
+    /** DER encoding of an RSAPrivateKey, version 1 (multi-prime), with the OtherPrimeInfos of the
+     * primes r3, r4, ...
+     * @param primes The primes ri
+     * @param exponents Their CRT exponents di = d mod (ri - 1)
+     * @param coefficients Their CRT coefficients ti = (r1 * ... * r(i-1))^-1 mod ri
+     */
+    public static byte[] multi_prime_private_key_der(BigInteger n, BigInteger e, BigInteger d, BigInteger p, BigInteger q,
+                                                     BigInteger dp, BigInteger dq, BigInteger qinv,
+                                                     BigInteger[] primes, BigInteger[] exponents, BigInteger[] coefficients) {
+        BigInteger[] head = {BigInteger.ONE, n, e, d, p, q, dp, dq, qinv};
+        int infos = 0;
+        for (int i = 0; i < primes.length; i++)
+            infos += der_length(primes[i], exponents[i], coefficients[i]);
+        int content = content_length(head) + 1 + length_length(infos) + infos;
+
+        ByteBuffer out = ByteBuffer.allocate(1 + length_length(content) + content);
+        out.put(SEQUENCE);
+        put_length(out, content);
+        put_integers(out, head);
+        out.put(SEQUENCE);
+        put_length(out, infos);
+        for (int i = 0; i < primes.length; i++)
+            put_der(out, primes[i], exponents[i], coefficients[i]);
+        return out.array();
+    }
+
+    /** DER encoding of a SEQUENCE of INTEGERs.
+     * @param integers The elements of the sequence
+     * @return The encoded sequence
+     */
+    public static byte[] der(BigInteger... integers) {
+        ByteBuffer out = ByteBuffer.allocate(der_length(integers));
+        put_der(out, integers);
+        return out.array();
+    }
+
+    /** Size of the DER encoding of a SEQUENCE of INTEGERs.
+     */
+    public static int der_length(BigInteger... integers) {
+        int content = content_length(integers);
+        return 1 + length_length(content) + content;
+    }
+
+    /** Writes the DER encoding of a SEQUENCE of INTEGERs at the position of the given buffer, so
+     * that a buffer can be reused for many keys.
+     * @param out Destination, with at least der_length(integers) bytes remaining
+     * @param integers The elements of the sequence
+     */
+    public static void put_der(ByteBuffer out, BigInteger... integers) {
+        out.put(SEQUENCE);
+        put_length(out, content_length(integers));
+        put_integers(out, integers);
+    }
+
+    private static void put_integers(ByteBuffer out, BigInteger... integers) {
+        for (BigInteger integer : integers) {
+            // Minimal two's complement, as DER requires
+            byte[] bytes = integer.toByteArray();
+            out.put(INTEGER);
+            put_length(out, bytes.length);
+            out.put(bytes);
+        }
+    }
+
+    /** DER encoding of the RSAPublicKey of the given RSAPrivateKey, from its n and e.
+     * @param private_key_der DER encoding of an RSAPrivateKey
+     * @return The encoded public key
+     */
+    public static byte[] public_key_der(byte[] private_key_der) {
+        ByteBuffer in = ByteBuffer.wrap(private_key_der);
+        if (in.get() != SEQUENCE)
+            throw new IllegalArgumentException("Not an RSAPrivateKey");
+        get_length(in);
+        get_integer(in);
+        return der(get_integer(in), get_integer(in));
+    }
+
+    private static BigInteger get_integer(ByteBuffer in) {
+        if (in.get() != INTEGER)
+            throw new IllegalArgumentException("Not an RSAPrivateKey");
+        byte[] bytes = new byte[get_length(in)];
+        in.get(bytes);
+        return new BigInteger(bytes);
+    }
+
+    private static int get_length(ByteBuffer in) {
+        int first = in.get() & 0xff;
+        if (first < 0x80)
+            return first;
+        int size = first & 0x7f;
+        if (size < 1 || size > 3)
+            throw new IllegalArgumentException("Unsupported DER length");
+        int length = 0;
+        for (int i = 0; i < size; i++)
+            length = (length << 8) | (in.get() & 0xff);
+        return length;
+    }
+
+    /** PEM encoding of the given DER bytes.
+     * @param type Label of the PEM block, e.g. "RSA PRIVATE KEY"
+     * @param der The DER bytes
+     * @return The PEM block, ending with a line separator
+     */
+    public static String pem(String type, byte[] der) {
+        String base64 = Base64.getEncoder().encodeToString(der);
+        StringBuilder sb = new StringBuilder(base64.length() + base64.length() / PEM_LINE_LENGTH * 2 + 64);
+        sb.append("-----BEGIN ").append(type).append("-----").append(PEM_LINE_SEPARATOR);
+        for (int i = 0; i < base64.length(); i += PEM_LINE_LENGTH) {
+            sb.append(base64, i, Math.min(i + PEM_LINE_LENGTH, base64.length())).append(PEM_LINE_SEPARATOR);
+        }
+        sb.append("-----END ").append(type).append("-----").append(PEM_LINE_SEPARATOR);
+        return sb.toString();
+    }
+
+    private static int content_length(BigInteger... integers) {
+        int length = 0;
+        for (BigInteger integer : integers) {
+            int bytes = integer.bitLength() / 8 + 1;
+            length += 1 + length_length(bytes) + bytes;
+        }
+        return length;
+    }
+
+    /** Size of a DER length: one byte below 128, otherwise 0x80 + the number of bytes that follow.
+     */
+    private static int length_length(int length) {
+        if (length < 0x80)
+            return 1;
+        return 1 + (Integer.SIZE - Integer.numberOfLeadingZeros(length) + 7) / 8;
+    }
+
+    private static void put_length(ByteBuffer out, int length) {
+        int size = length_length(length);
+        if (size == 1) {
+            out.put((byte) length);
+            return;
+        }
+        out.put((byte) (0x80 | (size - 1)));
+        for (int i = size - 2; i >= 0; i--)
+            out.put((byte) (length >>> (8 * i)));
+    }
+}
@@ -0,0 +1,28 @@
+package drsa;
+
+import java.math.BigInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Strategy used by drsa.DRSA to find the primes p and q above their seed-derived starting points.
+ */
+public interface PrimeSearch {
+
+    /** Finds the first probable prime strictly greater than the given number.
+     * @param n A non-negative starting point
+     * @return The next probable prime
+     */
+    BigInteger next_prime(BigInteger n);
+
+    /** Same as next_prime(n), but the given flag is polled during the search, which stops with a
+     * CancellationException as soon as it is raised. Engines that cannot stop early only poll it
+     * before they start.
+     * @param n A non-negative starting point
+     * @param cancelled Cancellation flag, or null
+     * @return The next probable prime
+     */
+    default BigInteger next_prime(BigInteger n, BooleanSupplier cancelled) {
+        PRBG.check_cancelled(cancelled);
+        return this.next_prime(n);
+    }
+}
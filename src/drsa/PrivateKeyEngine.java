@@ -0,0 +1,336 @@
+package drsa;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Private key operations of a drsa.DRSA key pair, for many messages: RSASSA-PKCS1-v1_5 signatures
+ * with SHA-256 (as "SHA256withRSA") and RSAES-PKCS1-v1_5 decryption (as "RSA/ECB/PKCS1Padding"),
+ * one at a time or in batches spread over an executor.<br>
+ * The CRT parameters of all the primes, and the products of the primes before each one, are taken
+ * from the key once, instead of on each operation. The exponentiations themselves are modPow()
+ * modulo each prime, which already works in the Montgomery domain for odd moduli.<br>
+ * Every operation is blinded: the input is multiplied by r^e before the exponentiation and the
+ * result by r^-1 after it, for a random r. Each thread keeps its own pair (r^e, r^-1), squared after
+ * each use and replaced by a fresh one every BLINDING_USES operations. The result is also checked
+ * against the public exponent before it is unblinded, so that a fault in one of the CRT halves does
+ * not give away a prime.<br>
+ * Instances are thread safe.
+ */
+public class PrivateKeyEngine {
+
+    /**
+     * Number of operations made with squares of the same blinding pair before a fresh one is drawn.
+     */
+    static final int BLINDING_USES = 32;
+
+    /**
+     * Minimum length of the padding string of RSAES-PKCS1-v1_5.
+     */
+    private static final int MIN_PADDING_STRING = 8;
+
+    /**
+     * DER encoding of the DigestInfo of SHA-256, before the hash (RFC 8017, 9.2, note 1).
+     */
+    private static final byte[] SHA256_DIGEST_INFO = {
+            0x30, 0x31, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02, 0x01,
+            0x05, 0x00, 0x04, 0x20
+    };
+    private static final int SHA256_BYTES = 32;
+
+    private final BigInteger n;
+    private final BigInteger e;
+    private final int modulus_bytes;
+
+    /**
+     * Primes in the order of RFC 8017 (p, q, r_3 ... r_k), with their CRT exponents, their CRT
+     * coefficients (qinv for p, none for q, t_i for r_i) and, from r_3 on, the product of the primes
+     * before them.
+     */
+    private final BigInteger[] primes;
+    private final BigInteger[] exponents;
+    private final BigInteger[] coefficients;
+    private final BigInteger[] products;
+
+    private final SecureRandom random;
+    private final ThreadLocal<Blinding> blinding = ThreadLocal.withInitial(() -> null);
+    private final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(PrivateKeyEngine::sha256);
+
+    /**
+     * Blinding pair of a thread: r^e mod n and r^-1 mod n.
+     */
+    private static class Blinding {
+        BigInteger r_e;
+        BigInteger r_inverse;
+        int uses;
+    }
+
+    /**
+     * @param drsa Key pair, with two primes or more
+     */
+    public PrivateKeyEngine(DRSA drsa) {
+        this(drsa, new SecureRandom());
+    }
+
+    /**
+     * @param drsa Key pair, with two primes or more
+     * @param random Source of the blinding factors
+     */
+    public PrivateKeyEngine(DRSA drsa, SecureRandom random) {
+        Map<String, BigInteger> public_params = drsa.get_public_params();
+        Map<String, BigInteger> private_params = drsa.get_private_params();
+        this.n = public_params.get("n");
+        this.e = public_params.get("e");
+        this.modulus_bytes = (this.n.bitLength() + 7) / 8;
+        this.random = random;
+
+        int k = drsa.getPrimeCount();
+        this.primes = new BigInteger[k];
+        this.exponents = new BigInteger[k];
+        this.coefficients = new BigInteger[k];
+        this.products = new BigInteger[k];
+        this.primes[0] = private_params.get("p");
+        this.exponents[0] = private_params.get("dp");
+        this.coefficients[0] = private_params.get("qinv");
+        this.primes[1] = private_params.get("q");
+        this.exponents[1] = private_params.get("dq");
+        BigInteger product = this.primes[0].multiply(this.primes[1]);
+        for (int i = 2; i < k; i++) {
+            this.primes[i] = private_params.get("r" + (i + 1));
+            this.exponents[i] = private_params.get("d" + (i + 1));
+            this.coefficients[i] = private_params.get("t" + (i + 1));
+            this.products[i] = product;
+            product = product.multiply(this.primes[i]);
+        }
+    }
+
+    /** Length of the signatures and of the ciphertexts.
+     * @return The length of the modulus, in bytes
+     */
+    public int getModulusBytes() {
+        return this.modulus_bytes;
+    }
+
+    /** Blinded and checked RSADP (RFC 8017, 5.1.2), which is also RSASP1 (5.2.1).
+     * @param c Representative, between 0 and n - 1
+     * @return c^d mod n
+     */
+    public BigInteger rsadp(BigInteger c) {
+        if (c.signum() < 0 || c.compareTo(this.n) >= 0)
+            throw new IllegalArgumentException("ciphertext representative out of range");
+
+        Blinding blinding = this.blinding();
+        BigInteger blinded = c.multiply(blinding.r_e).mod(this.n);
+        BigInteger m = this.crt(blinded);
+        if (!m.modPow(this.e, this.n).equals(blinded))
+            throw new IllegalStateException("Faulty private key operation");
+        return m.multiply(blinding.r_inverse).mod(this.n);
+    }
+
+    /** RSASSA-PKCS1-v1_5 signature of the given message with SHA-256 (RFC 8017, 8.2.1), the same as
+     * the JCA "SHA256withRSA" signature.
+     * @param message The message
+     * @return A new array with the signature, of getModulusBytes() bytes
+     */
+    public byte[] sign(byte[] message) {
+        if (this.modulus_bytes < SHA256_DIGEST_INFO.length + SHA256_BYTES + MIN_PADDING_STRING + 3)
+            throw new IllegalArgumentException("The modulus is too short for SHA-256 signatures");
+
+        MessageDigest digest = this.sha256.get();
+        byte[] hash = digest.digest(message);
+        byte[] em = new byte[this.modulus_bytes];
+        int t = em.length - SHA256_DIGEST_INFO.length - SHA256_BYTES;
+        em[1] = 0x01;
+        Arrays.fill(em, 2, t - 1, (byte) 0xff);
+        System.arraycopy(SHA256_DIGEST_INFO, 0, em, t, SHA256_DIGEST_INFO.length);
+        System.arraycopy(hash, 0, em, t + SHA256_DIGEST_INFO.length, SHA256_BYTES);
+        return this.i2osp(this.rsadp(new BigInteger(1, em)));
+    }
+
+    /** RSAES-PKCS1-v1_5 decryption of the given ciphertext (RFC 8017, 7.2.2), the same as the JCA
+     * "RSA/ECB/PKCS1Padding" cipher. The padding is checked in full, without stopping at the first
+     * error, and every error gives the same exception.
+     * @param ciphertext The ciphertext, of at most getModulusBytes() bytes
+     * @return A new array with the message
+     * @throws IllegalBlockSizeException If the ciphertext is longer than the modulus
+     * @throws BadPaddingException If the ciphertext is not below the modulus, or its padding is wrong
+     */
+    public byte[] decrypt(byte[] ciphertext) throws IllegalBlockSizeException, BadPaddingException {
+        if (ciphertext.length > this.modulus_bytes)
+            throw new IllegalBlockSizeException("The ciphertext is longer than the modulus");
+        BigInteger c = new BigInteger(1, ciphertext);
+        if (c.compareTo(this.n) >= 0)
+            throw new BadPaddingException("The ciphertext is not below the modulus");
+        byte[] em = this.i2osp(this.rsadp(c));
+
+        // 0x00 || 0x02 || PS || 0x00 || M, PS of at least 8 non zero bytes
+        int bad = (em[0] & 0xff) | ((em[1] & 0xff) ^ 0x02);
+        int separator = 0;
+        for (int i = 2; i < em.length; i++) {
+            int zero = ((em[i] & 0xff) - 1) >>> 31;
+            int first = zero & (((separator - 1) >>> 31) & 1);
+            separator |= -first & i;
+        }
+        bad |= -((separator - 1) >>> 31) & 1;
+        bad |= ((separator - 2 - MIN_PADDING_STRING) >>> 31);
+        if (bad != 0)
+            throw new BadPaddingException("Decryption error");
+        return Arrays.copyOfRange(em, separator + 1, em.length);
+    }
+
+    /** Signs the given messages on the common fork-join pool.
+     * @param messages The messages
+     * @return The signatures, in the order of the messages
+     */
+    public List<byte[]> sign(List<byte[]> messages) {
+        return this.sign(messages, ForkJoinPool.commonPool());
+    }
+
+    /** Signs the given messages on the given executor, in a few contiguous chunks per core.
+     * @param messages The messages
+     * @param executor Executor of the chunks
+     * @return The signatures, in the order of the messages
+     */
+    public List<byte[]> sign(List<byte[]> messages, Executor executor) {
+        byte[][] signatures = new byte[messages.size()][];
+        this.run_chunks(messages.size(), executor, i -> signatures[i] = this.sign(messages.get(i)));
+        return Arrays.asList(signatures);
+    }
+
+    /** Decrypts the given ciphertexts on the common fork-join pool.
+     * @param ciphertexts The ciphertexts
+     * @return The messages, in the order of the ciphertexts, with null for those that could not be
+     * decrypted (see decrypt())
+     */
+    public List<byte[]> decrypt(List<byte[]> ciphertexts) {
+        return this.decrypt(ciphertexts, ForkJoinPool.commonPool());
+    }
+
+    /** Decrypts the given ciphertexts on the given executor, in a few contiguous chunks per core.
+     * @param ciphertexts The ciphertexts
+     * @param executor Executor of the chunks
+     * @return The messages, in the order of the ciphertexts, with null for those that could not be
+     * decrypted (see decrypt())
+     */
+    public List<byte[]> decrypt(List<byte[]> ciphertexts, Executor executor) {
+        byte[][] messages = new byte[ciphertexts.size()][];
+        this.run_chunks(ciphertexts.size(), executor, i -> {
+            try {
+                messages[i] = this.decrypt(ciphertexts.get(i));
+            } catch (IllegalBlockSizeException | BadPaddingException e) {
+                messages[i] = null;
+            }
+        });
+        return Arrays.asList(messages);
+    }
+
+    /**
+     * Operation on the element of a batch at the given index.
+     */
+    private interface Operation {
+        void run(int index);
+    }
+
+    /** Runs the given operation for the indexes 0 to count - 1, in contiguous chunks on the given
+     * executor, and waits for all of them. The last chunk runs on the calling thread.
+     */
+    private void run_chunks(int count, Executor executor, Operation operation) {
+        int chunks = Math.min(count, 4 * Runtime.getRuntime().availableProcessors());
+        if (chunks <= 1) {
+            for (int i = 0; i < count; i++)
+                operation.run(i);
+            return;
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(chunks - 1);
+        for (int chunk = 0; chunk < chunks - 1; chunk++) {
+            int from = (int) ((long) count * chunk / chunks);
+            int to = (int) ((long) count * (chunk + 1) / chunks);
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++)
+                    operation.run(i);
+            }, executor));
+        }
+        for (int i = (int) ((long) count * (chunks - 1) / chunks); i < count; i++)
+            operation.run(i);
+        try {
+            for (CompletableFuture<Void> future : futures)
+                future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /** c^d mod n from the CRT parameters, recombined with Garner's formula (RFC 8017, 5.1.2).
+     */
+    private BigInteger crt(BigInteger c) {
+        BigInteger p = this.primes[0];
+        BigInteger q = this.primes[1];
+        BigInteger m_1 = c.mod(p).modPow(this.exponents[0], p);
+        BigInteger m_2 = c.mod(q).modPow(this.exponents[1], q);
+        BigInteger m = m_2.add(q.multiply(m_1.subtract(m_2).multiply(this.coefficients[0]).mod(p)));
+        for (int i = 2; i < this.primes.length; i++) {
+            BigInteger prime = this.primes[i];
+            BigInteger m_i = c.mod(prime).modPow(this.exponents[i], prime);
+            BigInteger h = m_i.subtract(m).multiply(this.coefficients[i]).mod(prime);
+            m = m.add(this.products[i].multiply(h));
+        }
+        return m;
+    }
+
+    /** Blinding pair of the calling thread, squared since its last use, or a fresh one.
+     */
+    private Blinding blinding() {
+        Blinding blinding = this.blinding.get();
+        if (blinding == null || blinding.uses >= BLINDING_USES) {
+            if (blinding == null) {
+                blinding = new Blinding();
+                this.blinding.set(blinding);
+            }
+            BigInteger r;
+            do {
+                r = new BigInteger(this.n.bitLength(), this.random);
+            } while (r.signum() == 0 || r.compareTo(this.n) >= 0 || !r.gcd(this.n).equals(BigInteger.ONE));
+            blinding.r_e = r.modPow(this.e, this.n);
+            blinding.r_inverse = r.modInverse(this.n);
+            blinding.uses = 0;
+        } else {
+            blinding.r_e = blinding.r_e.multiply(blinding.r_e).mod(this.n);
+            blinding.r_inverse = blinding.r_inverse.multiply(blinding.r_inverse).mod(this.n);
+        }
+        blinding.uses++;
+        return blinding;
+    }
+
+    /** I2OSP (RFC 8017, 4.1) of the given representative, on getModulusBytes() bytes.
+     */
+    private byte[] i2osp(BigInteger x) {
+        byte[] bytes = x.toByteArray();
+        byte[] result = new byte[this.modulus_bytes];
+        int length = Math.min(bytes.length, result.length);
+        System.arraycopy(bytes, bytes.length - length, result, result.length - length, length);
+        return result;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
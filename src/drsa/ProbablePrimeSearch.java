@@ -0,0 +1,14 @@
+package drsa;
+
+import java.math.BigInteger;
+
+/**
+ * Prime search that delegates to BigInteger.nextProbablePrime(), as drsa.DRSA originally did.
+ */
+public class ProbablePrimeSearch implements PrimeSearch {
+
+    @Override
+    public BigInteger next_prime(BigInteger n) {
+        return n.nextProbablePrime();
+    }
+}
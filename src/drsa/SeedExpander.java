@@ -0,0 +1,60 @@
+package drsa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Derives a seed of a fixed size from an input of any size, reading the input in blocks so that
+ * the memory used does not depend on its size.<br>
+ * The input is hashed with SHA-256, and the digest is expanded in counter mode, like MGF1: block i
+ * of the seed is SHA-256(digest || i || length), with i and length as 4 bytes big-endian integers.
+ * The length is part of every block, so seeds of different sizes are unrelated, instead of one
+ * being a prefix of the other.
+ */
+public class SeedExpander {
+
+    /**
+     * Size of the blocks read from the input.
+     */
+    static final int READ_BLOCK_SIZE = 1 << 16;
+
+    private SeedExpander() {
+    }
+
+    /** Reads the given stream to its end and derives a seed of the given size from it.
+     * @param in The input, which is not closed
+     * @param length Size of the seed, in bytes
+     * @return The seed
+     */
+    public static byte[] expand(InputStream in, int length) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] block = new byte[READ_BLOCK_SIZE];
+        int read;
+        while ((read = in.read(block)) >= 0)
+            digest.update(block, 0, read);
+        return expand(digest.digest(), length);
+    }
+
+    /** Derives a seed of the given size from the digest of an input.
+     * @param input_digest SHA-256 digest of the input
+     * @param length Size of the seed, in bytes
+     * @return The seed
+     */
+    static byte[] expand(byte[] input_digest, int length) throws NoSuchAlgorithmException {
+        if (length < 0)
+            throw new IllegalArgumentException("length < 0");
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] seed = new byte[length];
+        for (int i = 0, off = 0; off < length; i++) {
+            digest.update(input_digest);
+            digest.update(ByteBuffer.allocate(2 * Integer.BYTES).putInt(i).putInt(length).array());
+            byte[] out = digest.digest();
+            System.arraycopy(out, 0, seed, off, Math.min(out.length, length - off));
+            off += out.length;
+        }
+        return seed;
+    }
+}
@@ -0,0 +1,269 @@
+package drsa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Local cache of the drsa.PRBG state reached after setup(), so that the same generator can be
+ * rebuilt without searching for the confusion pattern again.<br>
+ * Entries are kept in least recently used order and evicted once the cache holds more than
+ * max_entries. The file is append-only: a header with a random salt, followed by one record per
+ * insertion or hit (32 bytes key, 8 bytes state). It is rewritten with only the live entries once
+ * it holds twice as many records as the cache allows.<br>
+ * Several processes can share the file: the load, each append and the compaction hold an
+ * exclusive lock on a sibling ".lock" file, which is never replaced, and a process whose file was
+ * replaced by the compaction of another one reopens it before appending. Within a process, a file
+ * must be opened by a single instance.<br>
+ * The cached state is as sensitive as the password itself, so the files are created readable and
+ * writable by their owner only.
+ */
+public class SetupCache {
+
+    static final byte[] MAGIC = {'D', 'R', 'S', 'A', 'S', 'C', '0', '1'};
+    static final int SALT_SIZE = 16;
+    static final int HEADER_SIZE = MAGIC.length + SALT_SIZE;
+    static final int KEY_SIZE = 32;
+    static final int RECORD_SIZE = KEY_SIZE + Long.BYTES;
+
+    private final Path file;
+    private final int max_entries;
+    private final byte[] salt;
+    private final LinkedHashMap<ByteBuffer, Long> entries;
+    private final FileChannel lock_channel;
+    private FileChannel channel;
+    private Object file_key;
+    private long records;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** Opens the cache stored in the given file, creating it if it does not exist.
+     * @param file The cache file
+     * @param max_entries Maximum number of cached states
+     */
+    public SetupCache(Path file, int max_entries) throws IOException {
+        if (max_entries < 1)
+            throw new IllegalArgumentException("max_entries < 1");
+        this.file = file;
+        this.max_entries = max_entries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+                if (size() > SetupCache.this.max_entries) {
+                    SetupCache.this.evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        this.salt = new byte[SALT_SIZE];
+        this.lock_channel = open(file.resolveSibling(file.getFileName() + ".lock"),
+                EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+        FileLock lock = this.lock_channel.lock();
+        try {
+            this.channel = open(file, EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            this.file_key = file_key(file);
+            if (this.channel.size() >= HEADER_SIZE) {
+                ByteBuffer content = ByteBuffer.allocate((int) this.channel.size());
+                while (content.hasRemaining() && this.channel.read(content) >= 0)
+                    ;
+                content.flip();
+                byte[] magic = new byte[MAGIC.length];
+                content.get(magic);
+                if (!Arrays.equals(magic, MAGIC))
+                    throw new IOException("Not a setup cache file: " + file);
+                content.get(this.salt);
+                while (content.remaining() >= RECORD_SIZE) {
+                    byte[] key = new byte[KEY_SIZE];
+                    content.get(key);
+                    this.entries.put(ByteBuffer.wrap(key), content.getLong());
+                    this.records++;
+                }
+                // Replaying the file is not an eviction
+                this.evictions = 0;
+                // Drop a torn record left by an interrupted write
+                this.channel.truncate(HEADER_SIZE + this.records * RECORD_SIZE);
+            } else {
+                new SecureRandom().nextBytes(this.salt);
+                this.channel.truncate(0);
+                write_fully(this.channel, header());
+            }
+            lock.release();
+        } catch (IOException | RuntimeException e) {
+            if (this.channel != null)
+                this.channel.close();
+            // Also releases the lock
+            this.lock_channel.close();
+            throw e;
+        }
+    }
+
+    /** Retrieves the state cached for the given generator inputs.
+     * @param inputs_digest Digest of the generator inputs (see PRBG.getInputsDigest())
+     * @return The post-setup state, or null if it is not cached
+     */
+    public synchronized Long get(byte[] inputs_digest) throws IOException {
+        ByteBuffer key = key(inputs_digest);
+        Long state = this.entries.get(key);
+        if (state == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        append(key, state);
+        return state;
+    }
+
+    /** Stores the post-setup state for the given generator inputs.
+     * @param inputs_digest Digest of the generator inputs (see PRBG.getInputsDigest())
+     * @param state The generator state after setup()
+     */
+    public synchronized void put(byte[] inputs_digest, long state) throws IOException {
+        ByteBuffer key = key(inputs_digest);
+        this.entries.put(key, state);
+        append(key, state);
+    }
+
+    public synchronized void close() throws IOException {
+        this.channel.close();
+        this.lock_channel.close();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("SetupCache{entries=%d, hits=%d, misses=%d, evictions=%d}",
+                entries.size(), hits, misses, evictions);
+    }
+
+    /** Appends a record to the file, compacting it first if it has grown too much.
+     */
+    private void append(ByteBuffer key, long state) throws IOException {
+        FileLock lock = this.lock_channel.lock();
+        try {
+            Object file_key = file_key(this.file);
+            if (!Objects.equals(file_key, this.file_key)) {
+                // Compacted by another process, whose records are not counted here
+                this.channel.close();
+                this.channel = open(this.file, EnumSet.of(StandardOpenOption.WRITE));
+                this.file_key = file_key;
+            }
+            if (this.records >= 2L * this.max_entries)
+                compact();
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            record.put(key.duplicate());
+            record.putLong(state);
+            record.flip();
+            // Other processes may have appended since the last write
+            this.channel.position(this.channel.size());
+            write_fully(this.channel, record);
+            this.records++;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Rewrites the file with the live entries only, from least to most recently used, and
+     * atomically replaces the previous one. Called with the lock held.
+     */
+    private void compact() throws IOException {
+        Path tmp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        ByteBuffer content = ByteBuffer.allocate(HEADER_SIZE + this.entries.size() * RECORD_SIZE);
+        content.put(header());
+        for (Map.Entry<ByteBuffer, Long> entry : this.entries.entrySet()) {
+            content.put(entry.getKey().duplicate());
+            content.putLong(entry.getValue());
+        }
+        content.flip();
+        // Left by an interrupted compaction, possibly with other permissions
+        Files.deleteIfExists(tmp);
+        try (FileChannel out = open(tmp, EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))) {
+            write_fully(out, content);
+            out.force(false);
+        }
+        this.channel.close();
+        Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.channel = open(this.file, EnumSet.of(StandardOpenOption.WRITE));
+        this.file_key = file_key(this.file);
+        this.records = this.entries.size();
+    }
+
+    private ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.put(this.salt);
+        header.flip();
+        return header;
+    }
+
+    /** Salted hash of the generator inputs, used as the key of the entries.
+     */
+    private ByteBuffer key(byte[] inputs_digest) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(this.salt);
+            return ByteBuffer.wrap(digest.digest(inputs_digest));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Opens the given file with the given options. If they create it, it is created readable and
+     * writable by its owner only, where the file system allows it.
+     */
+    private static FileChannel open(Path file, Set<StandardOpenOption> options) throws IOException {
+        try {
+            return FileChannel.open(file, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+            return FileChannel.open(file, options);
+        }
+    }
+
+    /** Identity of the file currently at the given path, which changes when it is replaced, or null
+     * if the file system has none.
+     */
+    private static Object file_key(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    private static void write_fully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
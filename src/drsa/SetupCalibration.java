@@ -0,0 +1,389 @@
+package drsa;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Model of the setup time of drsa.PRBG on this host, to choose the confusion string length and the
+ * iteration count that meet a time budget.<br>
+ * Each iteration of the setup scans bytes until the last n ones are the confusion pattern, which
+ * takes about 256^n bytes on average, with an exponential distribution (the bytes are close to
+ * uniform, so a match is a rare event with a constant rate). The bytes scanned by ic iterations
+ * then follow a Gamma (Erlang) distribution of shape ic and scale 256^n, and the time is that
+ * number of bytes divided by the measured scan rate, plus the measured cost of PBKDF2 and the fixed
+ * cost of each iteration (reseed and restart of the scan).<br>
+ * The model ignores the self-overlap of the pattern (e.g. "aa" takes 256^2 + 256 bytes on average)
+ * and the matches that span two iterations, which only matter for the shortest patterns. The rates
+ * are the ones of a compiled setup on one thread of an otherwise idle host: the first setup of a
+ * JVM, and a loaded host, are slower, so the budget should keep some margin.
+ */
+public class SetupCalibration {
+
+    /**
+     * Bytes scanned by each rate measure, and number of measures (the median is kept).
+     */
+    static final long MEASURE_BYTES = 1L << 25;
+    static final int MEASURES = 5;
+
+    /**
+     * Runs of PBKDF2 and of the setup before their measures, as they take a few runs to be compiled.
+     */
+    static final int WARMUPS = 8;
+
+    /**
+     * PBKDF2 iterations timed to measure their unit cost.
+     */
+    static final int PBKDF2_ITERATIONS = 20000;
+
+    /**
+     * Iterations of the setups timed to measure the scan rate, with a two bytes pattern (about
+     * MEASURE_BYTES bytes), and the fixed cost of an iteration, with a one byte pattern.
+     */
+    static final int SCAN_ITERATIONS = (int) (MEASURE_BYTES >> 16);
+    static final int SHORT_ITERATIONS = 20000;
+
+    /**
+     * Above this shape, the Gamma quantile is given by the Wilson-Hilferty approximation, whose
+     * error is far below the one of the model, instead of the bisection of P(a, x) whose cost grows
+     * with the square root of the shape.
+     */
+    static final double WILSON_HILFERTY_SHAPE = 1000;
+
+    /**
+     * A confusion string length and iteration count that meet the budget.
+     */
+    public static class Recommendation {
+        final int cs_length;
+        final int iteration_count;
+        final double mean_seconds;
+        final double percentile_seconds;
+
+        Recommendation(int cs_length, int iteration_count, double mean_seconds, double percentile_seconds) {
+            this.cs_length = cs_length;
+            this.iteration_count = iteration_count;
+            this.mean_seconds = mean_seconds;
+            this.percentile_seconds = percentile_seconds;
+        }
+
+        public int getCsLength() {
+            return cs_length;
+        }
+
+        public int getIterationCount() {
+            return iteration_count;
+        }
+
+        public double getMeanSeconds() {
+            return mean_seconds;
+        }
+
+        public double getPercentileSeconds() {
+            return percentile_seconds;
+        }
+
+        /** Base 2 logarithm of the expected number of bytes scanned, a measure of the hardness.
+         */
+        public double getWorkBits() {
+            return Math.log(this.iteration_count) / Math.log(2) + 8.0 * this.cs_length;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("cs_length=%d\tic=%d\tmean_s=%.3f\tpercentile_s=%.3f\twork_bits=%.1f",
+                    this.cs_length, this.iteration_count, this.mean_seconds, this.percentile_seconds, this.getWorkBits());
+        }
+    }
+
+    private final double next_byte_rate;
+    private final double scan_rate;
+    private final double lane_scan_rate;
+    private final double pbkdf2_seconds;
+    private final double iteration_seconds;
+
+    /**
+     * @param next_byte_rate Bytes per second of PRBG.next_bytes()
+     * @param scan_rate Bytes per second scanned by PRBG.setup()
+     * @param lane_scan_rate Bytes per second scanned by PRBG.lane_setup(), or 0 if not used
+     * @param pbkdf2_seconds Time of one PBKDF2 iteration
+     * @param iteration_seconds Fixed time of each setup iteration, besides the scanned bytes
+     */
+    public SetupCalibration(double next_byte_rate, double scan_rate, double lane_scan_rate, double pbkdf2_seconds, double iteration_seconds) {
+        this.next_byte_rate = next_byte_rate;
+        this.scan_rate = scan_rate;
+        this.lane_scan_rate = lane_scan_rate;
+        this.pbkdf2_seconds = pbkdf2_seconds;
+        this.iteration_seconds = iteration_seconds;
+    }
+
+    /** Measures the rates of this host, on the calling thread. Takes about ten seconds.
+     * @param lanes Whether to measure (and model) PRBG.lane_setup() too
+     * @return The calibration
+     */
+    public static SetupCalibration measure(boolean lanes) throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+        // Through setup() itself rather than a copy of its loop, which the JIT compiles differently
+        double[] scan_runs = new double[MEASURES];
+        for (int i = -WARMUPS; i < MEASURES; i++) {
+            double[] setup = timed_setup("calibration" + i, "ca", SCAN_ITERATIONS);
+            if (i >= 0)
+                scan_runs[i] = setup[1] / setup[0];
+        }
+        double scan_rate = median(scan_runs);
+
+        // A one byte pattern is found every 256 bytes: what the scan does not explain is the fixed
+        // cost of the iterations
+        double[] iteration_runs = new double[MEASURES];
+        for (int i = 0; i < MEASURES; i++) {
+            double[] setup = timed_setup("calibration" + i, "c", SHORT_ITERATIONS);
+            iteration_runs[i] = Math.max(0, setup[0] - setup[1] / scan_rate) / SHORT_ITERATIONS;
+        }
+        double iteration_seconds = median(iteration_runs);
+
+        // An 8 bytes pattern is practically never found, so every measure scans the same amount
+        PRBG prbg = new PRBG("calibration", "calibrat", 1);
+        byte[] block = new byte[1 << 16];
+        double next_byte_rate = median_rate(() -> {
+            for (long done = 0; done < MEASURE_BYTES; done += block.length)
+                prbg.next_bytes(block, 0, block.length);
+        });
+        double lane_scan_rate = 0;
+        if (lanes) {
+            long seed = prbg.getSeed();
+            // MEASURE_BYTES is a whole number of rounds
+            lane_scan_rate = median_rate(() -> {
+                for (long from = 7; from < MEASURE_BYTES; from += LaneScanner.ROUND_LENGTH)
+                    LaneScanner.search(0x0123456789ABCDEFL, 8, seed, from);
+            });
+        }
+
+        double[] pbkdf2_runs = new double[MEASURES];
+        for (int i = -WARMUPS; i < MEASURES; i++) {
+            long start = System.nanoTime();
+            new PRBG("calibration", "c", PBKDF2_ITERATIONS);
+            if (i >= 0)
+                pbkdf2_runs[i] = (System.nanoTime() - start) / 1e9 / PBKDF2_ITERATIONS;
+        }
+        double pbkdf2_seconds = median(pbkdf2_runs);
+
+        return new SetupCalibration(next_byte_rate, scan_rate, lane_scan_rate, pbkdf2_seconds, iteration_seconds);
+    }
+
+    /** Sets up a new generator (PBKDF2 excluded).
+     * @return The time of the setup, in seconds, and the number of bytes that it scanned
+     */
+    private static double[] timed_setup(String password, String confusion_string, int iteration_count)
+            throws NoSuchAlgorithmException, InvalidKeySpecException, IOException {
+        PRBG prbg = new PRBG(password, confusion_string, iteration_count);
+        long[] scanned = new long[1];
+        long start = System.nanoTime();
+        // The listener is only called at the end
+        prbg.setup(null, state -> scanned[0] = state.getBytesScanned(), Long.MAX_VALUE / 1000000);
+        return new double[]{(System.nanoTime() - start) / 1e9, scanned[0]};
+    }
+
+    /** Runs the given work of MEASURE_BYTES bytes once to warm up, then MEASURES times.
+     * @return The median rate, in bytes per second
+     */
+    private static double median_rate(Runnable work) {
+        work.run();
+        double[] rates = new double[MEASURES];
+        for (int i = 0; i < MEASURES; i++) {
+            long start = System.nanoTime();
+            work.run();
+            rates[i] = MEASURE_BYTES / ((System.nanoTime() - start) / 1e9);
+        }
+        return median(rates);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    public double getNextByteRate() {
+        return next_byte_rate;
+    }
+
+    public double getScanRate() {
+        return scan_rate;
+    }
+
+    public double getLaneScanRate() {
+        return lane_scan_rate;
+    }
+
+    /** Scan rate of the setup for the given confusion string length: the lane one when it was
+     * measured and PRBG.lane_setup() would use it for that length.
+     */
+    double rate_for(int cs_length) {
+        boolean lanes = this.lane_scan_rate > 0 && cs_length <= 8 && Math.pow(256, cs_length) >= LaneScanner.ROUND_LENGTH;
+        return lanes ? this.lane_scan_rate : this.scan_rate;
+    }
+
+    /** Expected setup time, including PBKDF2.
+     * @param cs_length Length of the confusion string
+     * @param iteration_count Iteration count
+     * @return The mean time, in seconds
+     */
+    public double mean_seconds(int cs_length, int iteration_count) {
+        return this.seconds(cs_length, iteration_count, iteration_count);
+    }
+
+    /** Setup time that the given fraction of the setups do not exceed, including PBKDF2.
+     * @param cs_length Length of the confusion string
+     * @param iteration_count Iteration count
+     * @param percentile Percentile, in ]0, 100[
+     * @return The time, in seconds
+     */
+    public double percentile_seconds(int cs_length, int iteration_count, double percentile) {
+        return this.seconds(cs_length, iteration_count, gamma_quantile(iteration_count, percentile / 100));
+    }
+
+    /** Time of a setup that scans scaled_bytes * 256^cs_length bytes.
+     */
+    private double seconds(int cs_length, int iteration_count, double scaled_bytes) {
+        return iteration_count * (this.pbkdf2_seconds + this.iteration_seconds)
+                + scaled_bytes * Math.pow(256, cs_length) / this.rate_for(cs_length);
+    }
+
+    /** For each confusion string length up to the given one, the largest iteration count whose
+     * setup time at the given percentile meets the budget. Lengths for which a single iteration
+     * exceeds the budget are left out.
+     * @param budget_seconds Time budget of the setup
+     * @param percentile Percentile of the setups that must meet the budget, in ]0, 100[
+     * @param max_cs_length Largest confusion string length
+     * @return The recommendations, by increasing confusion string length
+     */
+    public List<Recommendation> recommend(double budget_seconds, double percentile, int max_cs_length) {
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (int n = 1; n <= max_cs_length; n++) {
+            if (this.percentile_seconds(n, 1, percentile) > budget_seconds)
+                continue;
+            // The time grows with the iteration count: double, then bisect
+            int low = 1;
+            int high = 2;
+            while (high < Integer.MAX_VALUE / 2 && this.percentile_seconds(n, high, percentile) <= budget_seconds) {
+                low = high;
+                high *= 2;
+            }
+            while (high - low > 1) {
+                int mid = low + (high - low) / 2;
+                if (this.percentile_seconds(n, mid, percentile) <= budget_seconds)
+                    low = mid;
+                else
+                    high = mid;
+            }
+            recommendations.add(new Recommendation(n, low, this.mean_seconds(n, low), this.percentile_seconds(n, low, percentile)));
+        }
+        return recommendations;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("next_byte=%.1f MB/s\tscan=%.1f MB/s\tlane_scan=%.1f MB/s\tpbkdf2=%.3f us/iteration\titeration=%.3f us",
+                this.next_byte_rate / 1e6, this.scan_rate / 1e6, this.lane_scan_rate / 1e6,
+                this.pbkdf2_seconds * 1e6, this.iteration_seconds * 1e6);
+    }
+
+    /** Quantile of the Gamma distribution of the given shape and of scale 1.
+     * @param shape Shape (the iteration count)
+     * @param q Probability, in ]0, 1[
+     * @return x such that P(X {@literal <=} x) = q
+     */
+    static double gamma_quantile(double shape, double q) {
+        if (q <= 0 || q >= 1)
+            throw new IllegalArgumentException("The percentile must be between 0 and 100, exclusive");
+        if (shape > WILSON_HILFERTY_SHAPE) {
+            double z = normal_quantile(q);
+            double cube = 1 - 1 / (9 * shape) + z / (3 * Math.sqrt(shape));
+            return shape * cube * cube * cube;
+        }
+        double low = 0;
+        double high = shape + 10 * Math.sqrt(shape) + 10;
+        while (regularized_gamma_p(shape, high) < q)
+            high *= 2;
+        for (int i = 0; i < 100 && high - low > 1e-9 * high; i++) {
+            double mid = (low + high) / 2;
+            if (regularized_gamma_p(shape, mid) < q)
+                low = mid;
+            else
+                high = mid;
+        }
+        return (low + high) / 2;
+    }
+
+    /** Quantile of the standard normal distribution, by bisection of its distribution function,
+     * which is (1 + P(1/2, z^2 / 2)) / 2 for z {@literal >=} 0.
+     */
+    static double normal_quantile(double q) {
+        if (q < 0.5)
+            return -normal_quantile(1 - q);
+        double low = 0;
+        double high = 40;
+        for (int i = 0; i < 100; i++) {
+            double mid = (low + high) / 2;
+            if ((1 + regularized_gamma_p(0.5, mid * mid / 2)) / 2 < q)
+                low = mid;
+            else
+                high = mid;
+        }
+        return (low + high) / 2;
+    }
+
+    /** Regularized lower incomplete gamma function P(a, x), by its series below a + 1 and its
+     * continued fraction above (Numerical Recipes, 6.2).
+     */
+    static double regularized_gamma_p(double a, double x) {
+        if (x <= 0)
+            return 0;
+        double log_prefix = a * Math.log(x) - x - log_gamma(a);
+        if (x < a + 1) {
+            double term = 1 / a;
+            double sum = term;
+            for (int n = 1; n < 1000000 && Math.abs(term) > Math.abs(sum) * 1e-15; n++) {
+                term *= x / (a + n);
+                sum += term;
+            }
+            return Math.min(1, sum * Math.exp(log_prefix));
+        }
+        double tiny = 1e-300;
+        double b = x + 1 - a;
+        double c = 1 / tiny;
+        double d = 1 / b;
+        double h = d;
+        for (int i = 1; i < 1000000; i++) {
+            double an = -i * (i - a);
+            b += 2;
+            d = an * d + b;
+            d = Math.abs(d) < tiny ? tiny : d;
+            c = b + an / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            d = 1 / d;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < 1e-15)
+                break;
+        }
+        return Math.max(0, 1 - Math.exp(log_prefix) * h);
+    }
+
+    /** Logarithm of the gamma function, by the Lanczos approximation (g = 7, 9 coefficients).
+     */
+    static double log_gamma(double x) {
+        double[] c = {0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61503916999185, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+                1.5056327351493116e-7};
+        if (x < 0.5)
+            return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - log_gamma(1 - x);
+        x -= 1;
+        double sum = c[0];
+        for (int i = 1; i < c.length; i++)
+            sum += c[i] / (x + i);
+        double t = x + 7.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+}
@@ -0,0 +1,113 @@
+package drsa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+/**
+ * Saves the snapshots of a drsa.PRBG setup to a small file, so that a setup interrupted by the
+ * death of the process can be resumed from the latest snapshot.<br>
+ * The file holds a magic, the inputs digest of the generator (to refuse resuming a different
+ * setup), and the snapshot. It is replaced atomically at each save, so it always holds a
+ * complete snapshot. Like the setup cache, it is as sensitive as the password.
+ */
+public class SetupCheckpoint implements SetupListener {
+
+    static final byte[] MAGIC = {'D', 'R', 'S', 'A', 'C', 'K', '0', '1'};
+
+    private final Path file;
+    private final byte[] inputs_digest;
+
+    /**
+     * @param file The checkpoint file
+     * @param inputs_digest Digest of the generator inputs (see PRBG.getInputsDigest())
+     */
+    public SetupCheckpoint(Path file, byte[] inputs_digest) {
+        this.file = file;
+        this.inputs_digest = inputs_digest.clone();
+    }
+
+    /** Reads the latest snapshot.
+     * @return The snapshot, or null if there is none for these generator inputs
+     */
+    public SetupState load() throws IOException {
+        if (!Files.exists(this.file))
+            return null;
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(this.file));
+        byte[] magic = new byte[MAGIC.length];
+        byte[] digest = new byte[this.inputs_digest.length];
+        if (content.remaining() < magic.length + digest.length)
+            throw new IOException("Truncated checkpoint file: " + this.file);
+        content.get(magic);
+        if (!Arrays.equals(magic, MAGIC))
+            throw new IOException("Not a checkpoint file: " + this.file);
+        content.get(digest);
+        if (!Arrays.equals(digest, this.inputs_digest))
+            return null;
+        if (content.remaining() < 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES)
+            throw new IOException("Truncated checkpoint file: " + this.file);
+        int iteration = content.getInt();
+        int iteration_count = content.getInt();
+        long bytes_scanned = content.getLong();
+        long seed = content.getLong();
+        int window_length = content.getInt();
+        if (iteration < 0 || iteration > iteration_count || bytes_scanned < 0 || window_length < 0)
+            throw new IOException("Corrupt checkpoint file: " + this.file);
+        if (content.remaining() < window_length)
+            throw new IOException("Truncated checkpoint file: " + this.file);
+        int[] window = new int[window_length];
+        for (int i = 0; i < window.length; i++)
+            window[i] = Byte.toUnsignedInt(content.get());
+        return new SetupState(iteration, iteration_count, bytes_scanned, seed, window);
+    }
+
+    /** Saves the given snapshot, replacing the previous one.
+     * @param state Snapshot of the setup
+     */
+    @Override
+    public void progress(SetupState state) throws IOException {
+        int[] window = state.getWindow();
+        ByteBuffer content = ByteBuffer.allocate(MAGIC.length + this.inputs_digest.length
+                + 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES + window.length);
+        content.put(MAGIC);
+        content.put(this.inputs_digest);
+        content.putInt(state.getIteration());
+        content.putInt(state.getIterationCount());
+        content.putLong(state.getBytesScanned());
+        content.putLong(state.getSeed());
+        content.putInt(window.length);
+        for (int b : window)
+            content.put((byte) b);
+
+        Path tmp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        // Left by an interrupted save, possibly with other permissions
+        Files.deleteIfExists(tmp);
+        try {
+            Files.createFile(tmp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+            Files.createFile(tmp);
+        }
+        // On the disk before it replaces the previous snapshot, so that a power loss never leaves an
+        // empty checkpoint
+        content.flip();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining())
+                channel.write(content);
+            channel.force(true);
+        }
+        Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Removes the checkpoint file, once the setup it belongs to is no longer needed.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+}
@@ -0,0 +1,14 @@
+package drsa;
+
+import java.io.IOException;
+
+/**
+ * Receives periodic snapshots of a drsa.PRBG setup in progress.
+ */
+public interface SetupListener {
+
+    /** Called periodically during the setup, and once more when it finishes.
+     * @param state Snapshot of the setup
+     */
+    void progress(SetupState state) throws IOException;
+}
@@ -0,0 +1,52 @@
+package drsa;
+
+import java.io.PrintStream;
+
+/**
+ * Reports the progress of a drsa.PRBG setup (iterations done, bytes scanned and ETA) to a
+ * print stream. The ETA uses the average number of bytes per iteration seen so far, or
+ * 256^(confusion pattern size) before the first iteration is done.
+ */
+public class SetupProgress implements SetupListener {
+
+    private final PrintStream out;
+    private final int pattern_size;
+    private final long start;
+    private final long start_bytes;
+
+    /**
+     * @param out Destination of the reports
+     * @param pattern_size Size of the confusion pattern of the generator
+     * @param resume Snapshot the setup is resumed from, or null if it starts from the beginning
+     */
+    public SetupProgress(PrintStream out, int pattern_size, SetupState resume) {
+        this.out = out;
+        this.pattern_size = pattern_size;
+        this.start = System.nanoTime();
+        this.start_bytes = resume != null ? resume.getBytesScanned() : 0;
+    }
+
+    @Override
+    public void progress(SetupState state) {
+        double seconds = (System.nanoTime() - this.start) / 1e9;
+        long scanned = state.getBytesScanned() - this.start_bytes;
+
+        String eta = "?";
+        if (state.isDone()) {
+            eta = "done";
+        } else if (scanned > 0) {
+            double bytes_per_iteration = state.getIteration() > 0
+                    ? (double) state.getBytesScanned() / state.getIteration()
+                    : Math.pow(256, this.pattern_size);
+            double remaining = bytes_per_iteration * (state.getIterationCount() - state.getIteration());
+            eta = format_seconds(remaining / (scanned / seconds));
+        }
+        this.out.printf("setup: %d/%d iterations, %d bytes scanned, ETA %s%n",
+                state.getIteration(), state.getIterationCount(), state.getBytesScanned(), eta);
+    }
+
+    private static String format_seconds(double seconds) {
+        long s = Math.round(seconds);
+        return String.format("%02d:%02d:%02d", s / 3600, (s / 60) % 60, s % 60);
+    }
+}
@@ -0,0 +1,62 @@
+package drsa;
+
+/**
+ * Snapshot of a drsa.PRBG setup in progress, from which the setup can be resumed with the same
+ * result as an uninterrupted run.
+ */
+public class SetupState {
+
+    private final int iteration;
+    private final int iteration_count;
+    private final long bytes_scanned;
+    private final long seed;
+
+    /**
+     * Sliding window of the last bytes generated, oldest first.
+     */
+    private final int[] window;
+
+    /**
+     * @param iteration Number of iterations already completed
+     * @param iteration_count Total number of iterations of the setup
+     * @param bytes_scanned Number of bytes compared with the confusion pattern so far
+     * @param seed Current state of the generator
+     * @param window Sliding window of the last bytes generated, oldest first
+     */
+    public SetupState(int iteration, int iteration_count, long bytes_scanned, long seed, int[] window) {
+        this.iteration = iteration;
+        this.iteration_count = iteration_count;
+        this.bytes_scanned = bytes_scanned;
+        this.seed = seed;
+        this.window = window.clone();
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    public int getIterationCount() {
+        return iteration_count;
+    }
+
+    public long getBytesScanned() {
+        return bytes_scanned;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int[] getWindow() {
+        return window.clone();
+    }
+
+    public boolean isDone() {
+        return iteration >= iteration_count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SetupState{iteration=%d/%d, bytes_scanned=%d}", iteration, iteration_count, bytes_scanned);
+    }
+}
@@ -0,0 +1,195 @@
+package drsa;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Prime search that sieves a window of odd candidates above the starting point with a table of
+ * small primes, and only runs Miller-Rabin on the candidates that survive the sieve. Miller-Rabin
+ * with fixed bases only filters out composites cheaply: each candidate that passes it is confirmed
+ * with BigInteger.isProbablePrime(100), the test of BigInteger.nextProbablePrime() (random bases and
+ * a Lucas test), so the result is never weaker than the one of ProbablePrimeSearch. Candidates are
+ * tested in increasing order, so the result is the first probable prime above the starting point,
+ * the same that BigInteger.nextProbablePrime() returns.
+ */
+public class SievePrimeSearch implements PrimeSearch {
+
+    /**
+     * Odd primes used to sieve the candidates window. Held in a nested class so that the table is
+     * only built on the first search, not when drsa.DRSA is loaded.
+     */
+    private static class SieveTable {
+        static final int[] SIEVE_PRIMES = odd_primes_below(1 << 14);
+    }
+
+    /**
+     * Below this size, the search is delegated to BigInteger.nextProbablePrime(), since the
+     * candidates could be sieve primes themselves.
+     */
+    static final int SMALL_BIT_LENGTH = 95;
+
+    /**
+     * Limit for the number of Miller-Rabin rounds, which use the sieve primes as bases.
+     */
+    static final int MAX_ROUNDS = 1000;
+
+    /**
+     * Certainty of the confirmation of the Miller-Rabin survivors, as in BigInteger.nextProbablePrime().
+     */
+    static final int CERTAINTY = 100;
+
+    private final int rounds;
+    private final AtomicLong candidates_tested = new AtomicLong();
+
+    /**
+     * Filters the sieve survivors with a single Miller-Rabin round, of base 2.
+     */
+    public SievePrimeSearch() {
+        this(1);
+    }
+
+    /**
+     * @param rounds Number of Miller-Rabin rounds for each sieve survivor, with the bases 2, 3, 5,
+     *               7, ... in order, before the confirmation with isProbablePrime(100). If
+     *               {@literal <} 1, a single round.
+     */
+    public SievePrimeSearch(int rounds) {
+        if (rounds > MAX_ROUNDS)
+            throw new IllegalArgumentException("At most " + MAX_ROUNDS + " rounds");
+        this.rounds = Math.max(1, rounds);
+    }
+
+    @Override
+    public BigInteger next_prime(BigInteger n) {
+        return this.next_prime(n, null);
+    }
+
+    /** Same as next_prime(n), polling the flag before each Miller-Rabin test and each confirmation.
+     */
+    @Override
+    public BigInteger next_prime(BigInteger n, BooleanSupplier cancelled) {
+        PRBG.check_cancelled(cancelled);
+        if (n.signum() < 0)
+            throw new ArithmeticException("start < 0: " + n);
+        if (n.bitLength() < SMALL_BIT_LENGTH)
+            return n.nextProbablePrime();
+
+        // Window of odd candidates base, base + 2, base + 4, ...
+        BigInteger base = n.add(BigInteger.ONE).setBit(0);
+        int window = Math.max(64, n.bitLength() / 20 * 64);
+        boolean[] composite = new boolean[window];
+        BigInteger step = BigInteger.valueOf(2L * window);
+
+        while (true) {
+            int[] sieve_primes = SieveTable.SIEVE_PRIMES;
+            int[] residues = residues(base, sieve_primes);
+            Arrays.fill(composite, false);
+            for (int i = 0; i < sieve_primes.length; i++) {
+                int sp = sieve_primes[i];
+                // base + 2j = 0 (mod sp)  <=>  j = -base * 2^-1 (mod sp)
+                long first = (long) ((sp - residues[i]) % sp) * ((sp + 1) / 2) % sp;
+                for (int j = (int) first; j < window; j += sp)
+                    composite[j] = true;
+            }
+            for (int j = 0; j < window; j++) {
+                if (composite[j])
+                    continue;
+                PRBG.check_cancelled(cancelled);
+                BigInteger candidate = base.add(BigInteger.valueOf(2L * j));
+                this.candidates_tested.incrementAndGet();
+                if (!miller_rabin(candidate, this.rounds))
+                    continue;
+                PRBG.check_cancelled(cancelled);
+                if (candidate.isProbablePrime(CERTAINTY))
+                    return candidate;
+            }
+            base = base.add(step);
+        }
+    }
+
+    /** Number of candidates that survived the sieve and went through Miller-Rabin so far.
+     * @return The number of Miller-Rabin tested candidates
+     */
+    public long getCandidatesTested() {
+        return candidates_tested.get();
+    }
+
+    /** Miller-Rabin test of an odd number n {@literal >} 3, with the first rounds bases of 2, 3, 5, 7, ...
+     * @param n The odd number to test
+     * @param rounds Number of bases
+     * @return False if n is composite, true if it is a probable prime
+     */
+    static boolean miller_rabin(BigInteger n, int rounds) {
+        BigInteger n_minus_1 = n.subtract(BigInteger.ONE);
+        int s = n_minus_1.getLowestSetBit();
+        BigInteger d = n_minus_1.shiftRight(s);
+        for (int i = 0; i < rounds; i++) {
+            BigInteger a = BigInteger.valueOf(i == 0 ? 2 : SieveTable.SIEVE_PRIMES[i - 1]);
+            BigInteger x = a.modPow(d, n);
+            if (x.equals(BigInteger.ONE) || x.equals(n_minus_1))
+                continue;
+            boolean witness = true;
+            for (int r = 1; r < s && witness; r++) {
+                x = x.multiply(x).mod(n);
+                if (x.equals(n_minus_1))
+                    witness = false;
+                else if (x.equals(BigInteger.ONE))
+                    break;
+            }
+            if (witness)
+                return false;
+        }
+        return true;
+    }
+
+    /** Computes n mod p for each of the given primes. The primes are grouped so that their product
+     * fits in a long, which needs one BigInteger division per group instead of one per prime.
+     * @param n A non-negative number
+     * @param primes Primes {@literal <} 2^31
+     * @return The residues, in the same order as the primes
+     */
+    static int[] residues(BigInteger n, int[] primes) {
+        int[] residues = new int[primes.length];
+        int i = 0;
+        while (i < primes.length) {
+            long product = primes[i];
+            int j = i + 1;
+            while (j < primes.length && product <= Long.MAX_VALUE / primes[j])
+                product *= primes[j++];
+            long m = n.mod(BigInteger.valueOf(product)).longValue();
+            for (int k = i; k < j; k++)
+                residues[k] = (int) (m % primes[k]);
+            i = j;
+        }
+        return residues;
+    }
+
+    /** Sieve of Eratosthenes.
+     * @param bound Exclusive upper bound
+     * @return The primes below the bound, in increasing order
+     */
+    static int[] primes_below(int bound) {
+        boolean[] composite = new boolean[bound];
+        int count = 0;
+        for (int i = 2; i < bound; i++) {
+            if (composite[i])
+                continue;
+            count++;
+            for (long j = (long) i * i; j < bound; j += i)
+                composite[(int) j] = true;
+        }
+        int[] primes = new int[count];
+        int k = 0;
+        for (int i = 2; i < bound; i++)
+            if (!composite[i])
+                primes[k++] = i;
+        return primes;
+    }
+
+    private static int[] odd_primes_below(int bound) {
+        int[] primes = primes_below(bound);
+        return Arrays.copyOfRange(primes, 1, primes.length);
+    }
+}
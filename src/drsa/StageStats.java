@@ -0,0 +1,50 @@
+package drsa;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe latency statistics (count, mean and max) of the named stages of a pipeline.
+ */
+public class StageStats {
+
+    private static class Stage {
+        final LongAdder count = new LongAdder();
+        final LongAdder total_nanos = new LongAdder();
+        final AtomicLong max_nanos = new AtomicLong();
+    }
+
+    private final Map<String, Stage> stages = new ConcurrentSkipListMap<>();
+
+    /** Records one execution of the given stage.
+     * @param stage Name of the stage
+     * @param nanos Duration of the execution
+     */
+    public void record(String stage, long nanos) {
+        Stage s = this.stages.computeIfAbsent(stage, k -> new Stage());
+        s.count.increment();
+        s.total_nanos.add(nanos);
+        s.max_nanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount(String stage) {
+        Stage s = this.stages.get(stage);
+        return s == null ? 0 : s.count.sum();
+    }
+
+    /** One line per stage, in alphabetical order.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Stage> entry : this.stages.entrySet()) {
+            Stage s = entry.getValue();
+            long count = s.count.sum();
+            sb.append(String.format("%s\tcount=%d\tmean_ms=%.3f\tmax_ms=%.3f%n", entry.getKey(), count,
+                    count == 0 ? 0 : s.total_nanos.sum() / 1e6 / count, s.max_nanos.get() / 1e6));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package drsa;
+
+/**
+ * Jump-ahead for the xorshift step of drsa.PRBG. The step (x ^= x << 13; x ^= x >> 17;
+ * x ^= x << 5) is a linear map over GF(2)^64 (the arithmetic shift only copies bit 63), so n steps
+ * are the n-th power of its 64x64 bit matrix. The matrices T^(2^k) are computed once, and a jump of
+ * n steps applies the ones of the bits set in n, in O(log n) matrix-vector products.
+ */
+final class XorShiftJump {
+
+    /**
+     * POWERS[k][i] is the image of the basis vector 1L << i by T^(2^k), i.e. the column i of the
+     * matrix.
+     */
+    private static final long[][] POWERS = new long[63][];
+
+    static {
+        long[] t = new long[64];
+        for (int i = 0; i < 64; i++)
+            t[i] = step(1L << i);
+        POWERS[0] = t;
+        for (int k = 1; k < POWERS.length; k++)
+            POWERS[k] = multiply(POWERS[k - 1], POWERS[k - 1]);
+    }
+
+    private XorShiftJump() {
+    }
+
+    /** One xorshift step, the same as PRBG.next_byte() applies to its seed.
+     */
+    static long step(long x) {
+        x ^= x << 13;
+        x ^= x >> 17;
+        x ^= x << 5;
+        return x;
+    }
+
+    /** Advances the given state by the given number of steps.
+     * @param state A xorshift state
+     * @param steps Number of steps (non-negative)
+     * @return The state after the given number of steps
+     */
+    static long jump(long state, long steps) {
+        if (steps < 0)
+            throw new IllegalArgumentException("steps < 0");
+        for (int k = 0; steps != 0; k++, steps >>>= 1) {
+            if ((steps & 1) != 0)
+                state = apply(POWERS[k], state);
+        }
+        return state;
+    }
+
+    /** Matrix-vector product: XOR of the columns selected by the bits of x.
+     */
+    private static long apply(long[] matrix, long x) {
+        long result = 0;
+        while (x != 0) {
+            int i = Long.numberOfTrailingZeros(x);
+            result ^= matrix[i];
+            x &= x - 1;
+        }
+        return result;
+    }
+
+    /** Matrix product a * b (apply b, then a).
+     */
+    private static long[] multiply(long[] a, long[] b) {
+        long[] product = new long[64];
+        for (int i = 0; i < 64; i++)
+            product[i] = apply(a, b[i]);
+        return product;
+    }
+}
@@ -0,0 +1,74 @@
+package drsa;
+
+// External lib for command line parsing
+import org.apache.commons.cli.*;
+
+import java.util.List;
+
+/**
+ * This application measures the setup rates of this host (see drsa.SetupCalibration) and prints,
+ * for each confusion string length, the largest iteration count whose setup meets the given time
+ * budget at the given percentile.
+ */
+public class calibrate {
+
+    public static void main(String[] args) throws Exception {
+
+        Options options = new Options();
+        Option opt_budget = Option.builder("budget")
+                .argName("Budget")
+                .required(true)
+                .longOpt("budget")
+                .desc("Time budget of the setup, in seconds (number)")
+                .hasArg()
+                .build();
+        Option opt_pct = Option.builder("pct")
+                .argName("Percentile")
+                .longOpt("percentile")
+                .desc("Percentile of the setups that must meet the budget (number, optional, default 99)")
+                .hasArg()
+                .build();
+        Option opt_maxcs = Option.builder("maxcs")
+                .argName("Max confusion string length")
+                .longOpt("max_confusion_string_length")
+                .desc("Largest confusion string length (number, optional, default 6)")
+                .hasArg()
+                .build();
+        Option opt_lanes = Option.builder("lanes")
+                .longOpt("lanes")
+                .desc("Model the setup in SIMD lanes of randgen -lanes (optional)")
+                .build();
+        options.addOption(opt_budget);
+        options.addOption(opt_pct);
+        options.addOption(opt_maxcs);
+        options.addOption(opt_lanes);
+        CommandLineParser parser = new DefaultParser();
+
+        CommandLine cmds = null;
+        try {
+            cmds = parser.parse(options, args);
+        } catch (ParseException e) {
+            System.err.println("Error parsing command line options");
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        double budget = Double.parseDouble(cmds.getOptionValue("budget"));
+        double percentile = Double.parseDouble(cmds.getOptionValue("pct", "99"));
+        int max_cs = Integer.parseInt(cmds.getOptionValue("maxcs", "6"));
+        if (budget <= 0 || percentile <= 0 || percentile >= 100 || max_cs < 1) {
+            System.err.println("The budget must be positive, the percentile between 0 and 100 and the max confusion string length at least 1");
+            System.exit(1);
+        }
+
+        System.out.println("Measuring...");
+        SetupCalibration calibration = SetupCalibration.measure(cmds.hasOption("lanes"));
+        System.out.println(calibration);
+
+        List<SetupCalibration.Recommendation> recommendations = calibration.recommend(budget, percentile, max_cs);
+        if (recommendations.isEmpty())
+            System.out.printf("No setup meets %.3f s at the %.1fth percentile.%n", budget, percentile);
+        for (SetupCalibration.Recommendation recommendation : recommendations)
+            System.out.println(recommendation);
+    }
+}
@@ -0,0 +1,55 @@
+package drsa;
+
+// External lib for command line parsing
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * This application runs the key derivation daemon (drsa.KeyDaemon), which keeps a warm JVM
+ * serving randgen and rsagen requests over a loopback TCP port.
+ * The port is given with -port (7878 by default), and post-setup states may be cached in a file
+ * given with -cache, as in randgen.
+ */
+public class drsad {
+
+    static final int DEFAULT_PORT = 7878;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        Options options = new Options();
+        Option opt_port = Option.builder("port")
+                .argName("Port")
+                .longOpt("port")
+                .desc("Loopback TCP port to listen on (number)")
+                .hasArg()
+                .build();
+        Option opt_cache = Option.builder("cache")
+                .argName("Setup cache file")
+                .longOpt("setup_cache")
+                .desc("File where post-setup generator states are cached (optional)")
+                .hasArg()
+                .build();
+        options.addOption(opt_port);
+        options.addOption(opt_cache);
+        CommandLineParser parser = new DefaultParser();
+
+        int port = DEFAULT_PORT;
+        SetupCache cache = null;
+        try {
+            CommandLine cmds = parser.parse(options, args);
+            if (cmds.hasOption("port"))
+                port = Integer.parseInt(cmds.getOptionValue("port"));
+            if (cmds.hasOption("cache"))
+                cache = new SetupCache(Paths.get(cmds.getOptionValue("cache")), randgen.SETUP_CACHE_SIZE);
+        } catch (ParseException e) {
+            System.err.println("Error parsing command line options");
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        System.out.printf("Listening on 127.0.0.1:%d.%n", port);
+        new KeyDaemon(cache).serve(port);
+    }
+}
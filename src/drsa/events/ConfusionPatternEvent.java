@@ -0,0 +1,19 @@
+package drsa.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * SHA-256 derivation of the confusion pattern of drsa.PRBG.
+ */
+@Name("drsa.ConfusionPattern")
+@Label("Confusion Pattern")
+@Category({"DRSA", "PRBG"})
+@Description("Derivation of the confusion pattern from the confusion string")
+public class ConfusionPatternEvent extends jdk.jfr.Event {
+
+    @Label("Pattern Size")
+    public int pattern_size;
+}
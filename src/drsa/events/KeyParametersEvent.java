@@ -0,0 +1,28 @@
+package drsa.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Computation of the RSA parameters of drsa.DRSA from its primes.
+ */
+@Name("drsa.KeyParameters")
+@Label("Key Parameters")
+@Category({"DRSA", "RSA"})
+@Description("n, phi, d (modInverse) and the CRT parameters, from p, q and the other primes of a multi-prime key")
+public class KeyParametersEvent extends jdk.jfr.Event {
+
+    @Label("P Bits")
+    public int p_bits;
+
+    @Label("Q Bits")
+    public int q_bits;
+
+    @Label("Prime Count")
+    public int prime_count;
+
+    @Label("Modulus Bits")
+    public int modulus_bits;
+}
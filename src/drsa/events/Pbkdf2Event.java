@@ -0,0 +1,23 @@
+package drsa.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * PBKDF2 derivation of the initial seed of drsa.PRBG.
+ */
+@Name("drsa.Pbkdf2")
+@Label("PBKDF2 Seed")
+@Category({"DRSA", "PRBG"})
+@Description("Derivation of the generator seed from the password and the confusion string")
+public class Pbkdf2Event extends jdk.jfr.Event {
+
+    @Label("Iteration Count")
+    public int iteration_count;
+
+    @Label("Seed Bytes")
+    @Description("Size of the PBKDF2 output")
+    public int seed_bytes;
+}
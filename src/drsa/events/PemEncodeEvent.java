@@ -0,0 +1,28 @@
+package drsa.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * PEM encoding of a key of drsa.DRSA by drsa.rsagen.
+ */
+@Name("drsa.PemEncode")
+@Label("PEM Encode")
+@Category({"DRSA", "RSA"})
+@Description("PKCS#1 DER and PEM encoding of the key parameters, or its cached result")
+public class PemEncodeEvent extends jdk.jfr.Event {
+
+    @Label("Key Type")
+    @Description("private or public")
+    public String key_type;
+
+    @Label("Modulus Bits")
+    public int modulus_bits;
+
+    @Label("PEM Size")
+    @DataAmount
+    public int pem_bytes;
+}
@@ -0,0 +1,29 @@
+package drsa.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One search of the next prime by drsa.DRSA.
+ */
+@Name("drsa.PrimeSearch")
+@Label("Prime Search")
+@Category({"DRSA", "RSA"})
+@Description("Search of the first probable prime above a number")
+public class PrimeSearchEvent extends jdk.jfr.Event {
+
+    @Label("Engine")
+    public String engine;
+
+    @Label("Start Bits")
+    public int start_bits;
+
+    @Label("Prime Bits")
+    public int prime_bits;
+
+    @Label("Odd Candidates")
+    @Description("Odd numbers between the start and the prime, i.e. the candidates gone through")
+    public long odd_candidates;
+}
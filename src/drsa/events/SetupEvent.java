@@ -0,0 +1,40 @@
+package drsa.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Setup of drsa.PRBG, by any of its setup methods.
+ */
+@Name("drsa.Setup")
+@Label("PRBG Setup")
+@Category({"DRSA", "PRBG"})
+@Description("Search of the confusion pattern, for every iteration")
+public class SetupEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    @Description("setup, parallel_setup or lane_setup")
+    public String method;
+
+    @Label("Iteration Count")
+    public int iteration_count;
+
+    @Label("Pattern Size")
+    public int pattern_size;
+
+    @Label("Bytes Scanned")
+    @Description("Bytes compared with the confusion pattern, by this call only")
+    @DataAmount
+    public long bytes_scanned;
+
+    @Label("Pattern Hits")
+    @Description("Iterations that found the confusion pattern, by this call only")
+    public int pattern_hits;
+
+    @Label("Cache Hit")
+    @Description("Whether the post-setup state was taken from a setup cache")
+    public boolean cache_hit;
+}
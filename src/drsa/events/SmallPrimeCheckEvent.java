@@ -0,0 +1,24 @@
+package drsa.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Check of a prime of drsa.DRSA against the small primes, including the searches of its
+ * replacements.
+ */
+@Name("drsa.SmallPrimeCheck")
+@Label("Small Prime Check")
+@Category({"DRSA", "RSA"})
+@Description("Rejection of the primes divisible by a small prime")
+public class SmallPrimeCheckEvent extends jdk.jfr.Event {
+
+    @Label("Small Primes")
+    public int small_primes;
+
+    @Label("Rejections")
+    @Description("Primes rejected and searched again")
+    public int rejections;
+}
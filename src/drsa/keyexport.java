@@ -0,0 +1,74 @@
+package drsa;
+
+// External lib for command line parsing
+import org.apache.commons.cli.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This application exports the keys of a keystore file (see drsa.KeyStoreReader) to PEM files, with
+ * the same names and content that rsagen writes: one key with -kn, or all of them. With -list, it
+ * prints the names of the keys instead.
+ */
+public class keyexport {
+
+    public static void main(String[] args) throws Exception {
+
+        Options options = new Options();
+        Option opt_ks = Option.builder("ks")
+                .argName("Keystore file")
+                .required(true)
+                .longOpt("keystore")
+                .desc("Keystore file (textual)")
+                .hasArg()
+                .build();
+        Option opt_kn = Option.builder("kn")
+                .argName("Key name")
+                .longOpt("key_name")
+                .desc("Name of the key to export (textual, optional, default all the keys)")
+                .hasArg()
+                .build();
+        Option opt_list = Option.builder("list")
+                .longOpt("list")
+                .desc("Print the names of the keys instead of exporting them (optional)")
+                .build();
+        options.addOption(opt_ks);
+        options.addOption(opt_kn);
+        options.addOption(opt_list);
+        CommandLineParser parser = new DefaultParser();
+
+        CommandLine cmds = null;
+        try {
+            cmds = parser.parse(options, args);
+        } catch (ParseException e) {
+            System.err.println("Error parsing command line options");
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        KeyStoreReader store = new KeyStoreReader(Paths.get(cmds.getOptionValue("ks")));
+        if (cmds.hasOption("list")) {
+            for (String name : store.names())
+                System.out.println(name);
+            store.close();
+            return;
+        }
+
+        List<String> names = cmds.hasOption("kn") ? Collections.singletonList(cmds.getOptionValue("kn")) : store.names();
+        for (String kn : names) {
+            String pem_priv = store.get_private_key_pem(kn);
+            if (pem_priv == null) {
+                System.err.printf("No key named %s in the keystore%n", kn);
+                System.exit(1);
+            }
+            Files.write(Paths.get(String.format("%s_priv_key.pem", kn)), pem_priv.getBytes(StandardCharsets.US_ASCII));
+            Files.write(Paths.get(String.format("%s_pub_key.pem", kn)), store.get_public_key_pem(kn).getBytes(StandardCharsets.US_ASCII));
+        }
+        store.close();
+        System.out.printf("%d key pairs exported.%n", names.size());
+    }
+}
@@ -0,0 +1,203 @@
+package drsa;
+
+// External lib for command line parsing
+import org.apache.commons.cli.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This application derives a key pair from a password in a single process (see drsa.KeyPipeline):
+ * the generator is setted up as in randgen, and its bytes go straight into the drsa.DRSA prime
+ * searches, without going through stdout and stdin.
+ * With -nob N (512 by default) the keys are the same as the ones of
+ * {@code randgen -pwd P -cs C -ic I -nob N | rsagen}; with -bits B the key has exactly B bits.
+ * The keys are exported to PEM files with the given name, as in rsagen.
+ * With -children N or -label L, the setup is done once and the keys are children of the post-setup
+ * state instead (see drsa.KeyHierarchy).
+ */
+public class keygen {
+
+    public static void main(String[] args) throws Exception {
+
+        Options options = new Options();
+        Option opt_pwd = Option.builder("pwd")
+                .argName("Password")
+                .required(true)
+                .longOpt("password")
+                .desc("Password (textual)")
+                .hasArg()
+                .build();
+        Option opt_cs = Option.builder("cs")
+                .argName("Confusion String")
+                .required(true)
+                .longOpt("confusion_string")
+                .desc("Confusion string (textual)")
+                .hasArg()
+                .build();
+        Option opt_ic = Option.builder("ic")
+                .argName("Iteration Count")
+                .required(true)
+                .longOpt("iteration_count")
+                .desc("Iteration count (number)")
+                .hasArg()
+                .build();
+        Option opt_nob = Option.builder("nob")
+                .argName("Number of bytes")
+                .longOpt("number_of_bytes")
+                .desc("Number of seed bytes, as given to rsagen (number, optional, default 512)")
+                .hasArg()
+                .build();
+        Option opt_bits = Option.builder("bits")
+                .argName("Modulus bits")
+                .longOpt("bits")
+                .desc("Size of the key, instead of a number of seed bytes (number, optional)")
+                .hasArg()
+                .build();
+        Option opt_primes = Option.builder("primes")
+                .argName("Number of primes")
+                .longOpt("primes")
+                .desc("Number of primes of the modulus, for a multi-prime key with -bits (number, optional, default 2)")
+                .hasArg()
+                .build();
+        Option opt_kn = Option.builder("kn")
+                .argName("Key name")
+                .longOpt("key_name")
+                .desc("Name for the generated key (textual, optional, default 'key')")
+                .hasArg()
+                .build();
+        Option opt_cache = Option.builder("cache")
+                .argName("Setup cache file")
+                .longOpt("setup_cache")
+                .desc("File where post-setup generator states are cached (optional)")
+                .hasArg()
+                .build();
+        Option opt_threads = Option.builder("threads")
+                .argName("Threads")
+                .longOpt("threads")
+                .desc("Number of threads searching the confusion pattern during the setup (number, optional)")
+                .hasArg()
+                .build();
+        Option opt_lanes = Option.builder("lanes")
+                .longOpt("lanes")
+                .desc("Search the confusion pattern in SIMD lanes during the setup (optional)")
+                .build();
+        Option opt_par = Option.builder("par")
+                .longOpt("parallel")
+                .desc("Search p and q concurrently on the common fork-join pool (optional)")
+                .build();
+        Option opt_children = Option.builder("children")
+                .argName("Number of children")
+                .longOpt("children")
+                .desc("Derive this many child keys from a single setup, saved as <key name>_<index>, with -bits (number, optional)")
+                .hasArg()
+                .build();
+        Option opt_label = Option.builder("label")
+                .argName("Child label")
+                .longOpt("label")
+                .desc("Derive the child key with this label from the setup, with -bits (textual, optional)")
+                .hasArg()
+                .build();
+        options.addOption(opt_pwd);
+        options.addOption(opt_cs);
+        options.addOption(opt_ic);
+        options.addOption(opt_nob);
+        options.addOption(opt_bits);
+        options.addOption(opt_primes);
+        options.addOption(opt_kn);
+        options.addOption(opt_cache);
+        options.addOption(opt_threads);
+        options.addOption(opt_lanes);
+        options.addOption(opt_par);
+        options.addOption(opt_children);
+        options.addOption(opt_label);
+        CommandLineParser parser = new DefaultParser();
+
+        CommandLine cmds = null;
+        try {
+            cmds = parser.parse(options, args);
+        } catch (ParseException e) {
+            System.err.println("Error parsing command line options");
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        String kn = cmds.getOptionValue("kn", "key");
+        SetupCache cache = null;
+        if (cmds.hasOption("cache"))
+            cache = new SetupCache(Paths.get(cmds.getOptionValue("cache")), randgen.SETUP_CACHE_SIZE);
+
+        KeyPipeline.Builder builder = KeyPipeline.builder()
+                .password(cmds.getOptionValue("pwd"))
+                .confusion_string(cmds.getOptionValue("cs"))
+                .iteration_count(Integer.parseInt(cmds.getOptionValue("ic")))
+                .setup_cache(cache)
+                .setup_threads(Integer.parseInt(cmds.getOptionValue("threads", "1")))
+                .lanes(cmds.hasOption("lanes"))
+                .prime_executor(cmds.hasOption("par") ? ForkJoinPool.commonPool() : null);
+        if (cmds.hasOption("nob"))
+            builder.seed_bytes(Integer.parseInt(cmds.getOptionValue("nob")));
+        if (cmds.hasOption("bits"))
+            builder.modulus_bits(Integer.parseInt(cmds.getOptionValue("bits")));
+        if (cmds.hasOption("primes"))
+            builder.prime_count(Integer.parseInt(cmds.getOptionValue("primes")));
+
+        KeyPipeline pipeline;
+        try {
+            pipeline = builder.build();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        if (cmds.hasOption("children") || cmds.hasOption("label")) {
+            if (!cmds.hasOption("bits") || cmds.hasOption("nob") || (cmds.hasOption("children") && cmds.hasOption("label"))) {
+                System.err.println("Child keys need -bits, without -nob, and either -children or -label");
+                System.exit(1);
+            }
+            int bits = Integer.parseInt(cmds.getOptionValue("bits"));
+            int primes = Integer.parseInt(cmds.getOptionValue("primes", "2"));
+
+            long start = System.nanoTime();
+            KeyHierarchy hierarchy = pipeline.hierarchy();
+            double setup_seconds = (System.nanoTime() - start) / 1e9;
+            if (cache != null)
+                cache.close();
+            if (cmds.hasOption("label")) {
+                write(kn, hierarchy.child(cmds.getOptionValue("label"), bits, primes));
+            } else {
+                int children = Integer.parseInt(cmds.getOptionValue("children"));
+                Executor executor = cmds.hasOption("par") ? ForkJoinPool.commonPool() : Runnable::run;
+                List<DRSA> keys = hierarchy.children(0, children, bits, primes, executor);
+                for (int i = 0; i < children; i++)
+                    write(String.format("%s_%d", kn, i), keys.get(i));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Setup in %.3f s, key pairs derived in %.3f s.%n", setup_seconds, seconds - setup_seconds);
+            return;
+        }
+
+        long start = System.nanoTime();
+        DRSA drsa = pipeline.derive();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (cache != null)
+            cache.close();
+
+        Files.write(Paths.get(String.format("%s_priv_key.pem", kn)), rsagen.private_key_pem(drsa).getBytes(StandardCharsets.US_ASCII));
+        System.out.printf("Private key saved to %s_priv_key.pem.%n", kn);
+        Files.write(Paths.get(String.format("%s_pub_key.pem", kn)), rsagen.public_key_pem(drsa).getBytes(StandardCharsets.US_ASCII));
+        System.out.printf("Public key saved to %s_pub_key.pem.%n", kn);
+        System.out.printf("Key pair derived in %.3f s.%n", seconds);
+    }
+
+    private static void write(String kn, DRSA drsa) throws Exception {
+        Files.write(Paths.get(String.format("%s_priv_key.pem", kn)), rsagen.private_key_pem(drsa).getBytes(StandardCharsets.US_ASCII));
+        Files.write(Paths.get(String.format("%s_pub_key.pem", kn)), rsagen.public_key_pem(drsa).getBytes(StandardCharsets.US_ASCII));
+        System.out.printf("Key pair saved to %s_priv_key.pem and %s_pub_key.pem.%n", kn, kn);
+    }
+}
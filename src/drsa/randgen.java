@@ -7,30 +7,64 @@ import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
-import drsa.utils.Utils;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 /**
  * This application implements the Pseudo-random Byte Generator (drsa.PRBG).<br>
  * It may do one of two things:<br>
- * - Perform benchmarking of the drsa.PRBG setup - uses random passwords and multiple confusion strings and
- *   iteration counters to test the setup of the generator, and produces a histogram with the processing
- *   time per confusion string size [1-4], for each iteration count {1, 5, 10, 20, 50, 100, 200}.
- *   For that, only the flag -bmk or -benchmark is needed. It may take a long time.<br>
+ * - Perform benchmarking of the drsa.PRBG setup - uses fixed pseudo-random passwords and multiple confusion
+ *   strings and iteration counters to test the setup of the generator (see drsa.MacroBenchmark), and produces a
+ *   histogram with the median processing time per confusion string size [1-4], for each iteration count
+ *   {1, 5, 10, 20, 50, 100, 200}, and a chart of the setups per second for 1 to N concurrent setups, along with
+ *   CSV and JSON files with the percentiles of every measure. For that, only the flag -bmk or -benchmark is
+ *   needed. It may take a long time.<br>
  * - Output nob (number of bytes) or infinite number of pseudo-random bytes to stdout - using the given password,
  *   confusion string and iteration count. For that, the flags -pwd, -cs, -ic, and -nob are needed. If nob {@literal <} 1,
- *   the program will output an infinite number of bytes.
+ *   the program will output an infinite number of bytes. With -out, the bytes are written to the given
+ *   file instead, through memory-mapped windows of MAP_WINDOW bytes.
  */
 public class randgen {
-    public static void main(String[] args) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
+
+    /**
+     * Size of the blocks written to the output channel.
+     */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Size of the file regions mapped at a time with -out. Each window is forced to the file before
+     * the next one is mapped, so the memory used does not grow with the number of bytes.
+     */
+    static final int MAP_WINDOW = 1 << 26;
+
+    /**
+     * Maximum number of post-setup states kept in the setup cache file.
+     */
+    static final int SETUP_CACHE_SIZE = 1024;
+
+    /**
+     * Time between two setup checkpoints (and progress reports).
+     */
+    static final long CHECKPOINT_INTERVAL_MILLIS = 10000;
+
+    public static void main(String[] args) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException, InterruptedException {
 
         // Generate bytes option
         Options outputOptions = new Options();
@@ -67,19 +101,97 @@ public class randgen {
                 .hasArg()
                 .build();
 
+        Option opt_cache = Option.builder("cache")
+                .argName("Setup cache file")
+                .required(false)
+                .longOpt("setup_cache")
+                .desc("File where post-setup generator states are cached (optional)")
+                .hasArg()
+                .build();
+
+        Option opt_ckpt = Option.builder("ckpt")
+                .argName("Checkpoint file")
+                .required(false)
+                .longOpt("checkpoint")
+                .desc("File where the setup progress is saved and resumed from (optional)")
+                .hasArg()
+                .build();
+
+        Option opt_threads = Option.builder("threads")
+                .argName("Threads")
+                .required(false)
+                .longOpt("threads")
+                .desc("Number of threads searching the confusion pattern during the setup (number, optional)")
+                .hasArg()
+                .build();
+
+        Option opt_out = Option.builder("out")
+                .argName("Output file")
+                .required(false)
+                .longOpt("output")
+                .desc("File where the bytes are written, instead of stdout (optional, needs nob >= 1)")
+                .hasArg()
+                .build();
+
+        Option opt_lanes = Option.builder("lanes")
+                .required(false)
+                .longOpt("lanes")
+                .desc("Search the confusion pattern in SIMD lanes during the setup (optional)")
+                .build();
+
         outputOptions.addOption(opt_pwd);
         outputOptions.addOption(opt_cs);
         outputOptions.addOption(opt_ic);
         outputOptions.addOption(opt_nob);
+        outputOptions.addOption(opt_cache);
+        outputOptions.addOption(opt_ckpt);
+        outputOptions.addOption(opt_threads);
+        outputOptions.addOption(opt_lanes);
+        outputOptions.addOption(opt_out);
 
         // Benchmark option
         Options benchmarkOptions = new Options();
         Option opt_bmk = Option.builder("bmk")
                 .argName("Benchmark")
                 .longOpt("benchmark")
-                .desc("Perform benchmarking with random parameters")
+                .desc("Perform benchmarking with fixed pseudo-random parameters")
+                .build();
+        Option opt_trials = Option.builder("trials")
+                .argName("Trials")
+                .longOpt("trials")
+                .desc("Measured setups per benchmark cell (number, optional, default 5)")
+                .hasArg()
+                .build();
+        Option opt_warmup = Option.builder("warmup")
+                .argName("Warm-up setups")
+                .longOpt("warmup")
+                .desc("Setups per confusion string size before measuring (number, optional, default 2)")
+                .hasArg()
+                .build();
+        Option opt_maxcs = Option.builder("maxcs")
+                .argName("Confusion string size")
+                .longOpt("max_confusion_size")
+                .desc("Largest confusion string size to benchmark (number, optional, default 4)")
+                .hasArg()
+                .build();
+        Option opt_ics = Option.builder("ics")
+                .argName("Iteration counts")
+                .longOpt("iteration_counts")
+                .desc("Comma separated iteration counts to benchmark (optional, default 1,5,10,20,50,100,200)")
+                .hasArg()
+                .build();
+        Option opt_sweep = Option.builder("sweep")
+                .argName("Threads")
+                .longOpt("sweep")
+                .desc("Largest number of concurrent setups to benchmark (number, optional, default the number of cores)")
+                .hasArg()
                 .build();
         benchmarkOptions.addOption(opt_bmk);
+        benchmarkOptions.addOption(opt_trials);
+        benchmarkOptions.addOption(opt_warmup);
+        benchmarkOptions.addOption(opt_maxcs);
+        benchmarkOptions.addOption(opt_ics);
+        benchmarkOptions.addOption(opt_sweep);
 
         // Parse options
         CommandLineParser parser = new DefaultParser();
@@ -93,98 +205,111 @@ public class randgen {
                 String pwd = cmds.getOptionValue("pwd");
                 String cs = cmds.getOptionValue("cs");
                 int ic = Integer.parseInt(cmds.getOptionValue("ic"));
-                int nob = Integer.parseInt(cmds.getOptionValue("nob"));
+                long nob = Long.parseLong(cmds.getOptionValue("nob"));
+                if (cmds.hasOption("out") && nob < 1) {
+                    System.err.println("-out needs a number of bytes >= 1");
+                    System.exit(1);
+                }
 
                 PRBG prbg = new PRBG(pwd, cs, ic);
-                prbg.setup();
-
-                if (nob >=1 ) {
-                    for (int i = 0; i < nob; i++) {
-                        long b = prbg.next_byte();
-                        if (b >= 128)
-                            b = b - 256;
-                        System.out.write(new byte[] {Byte.parseByte(String.valueOf(b))});
-                    }
+                SetupCache cache = null;
+                if (cmds.hasOption("cache"))
+                    cache = new SetupCache(Paths.get(cmds.getOptionValue("cache")), SETUP_CACHE_SIZE);
+
+                // Checkpoint the setup and report its progress, resuming from the latest checkpoint
+                SetupCheckpoint checkpoint = null;
+                SetupState resume = null;
+                SetupListener listener = null;
+                if (cmds.hasOption("ckpt")) {
+                    SetupCheckpoint file = new SetupCheckpoint(Paths.get(cmds.getOptionValue("ckpt")), prbg.getInputsDigest());
+                    resume = file.load();
+                    SetupProgress progress = new SetupProgress(System.err, prbg.getConfusionPatternSize(), resume);
+                    if (resume != null)
+                        System.err.printf("Resuming from checkpoint: %s%n", resume);
+                    listener = state -> {
+                        file.progress(state);
+                        progress.progress(state);
+                    };
+                    checkpoint = file;
                 }
-                else {
-                    while (true) {
-                        long b = prbg.next_byte();
-                        if (b >= 128)
-                            b = b - 256;
-                        System.out.write(new byte[] {Byte.parseByte(String.valueOf(b))});
-                    }
+
+                // The parallel and lane searches do not checkpoint
+                int threads = cmds.hasOption("threads") ? Integer.parseInt(cmds.getOptionValue("threads")) : 1;
+                KeyPipeline.setup(prbg, cache, checkpoint == null ? threads : 1, checkpoint == null && cmds.hasOption("lanes"),
+                        resume, listener, CHECKPOINT_INTERVAL_MILLIS, null);
+
+                if (checkpoint != null)
+                    checkpoint.delete();
+                if (cache != null) {
+                    cache.close();
+                    System.err.println(cache);
+                }
+
+                if (cmds.hasOption("out")) {
+                    write_file(prbg, nob, Paths.get(cmds.getOptionValue("out")));
+                } else {
+                    WritableByteChannel channel = new FileOutputStream(FileDescriptor.out).getChannel();
+                    write_bytes(prbg, nob, channel);
                 }
 
             } else {
                 // Benchmark options selected
-
-                // Times file
-                SimpleDateFormat formatter= new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
-                Date creation_date = new Date(System.currentTimeMillis());
-                BufferedWriter writer = new BufferedWriter(new FileWriter(String.format("times-%s.txt", formatter.format(creation_date))));
-
-                // Reusable variables
-                long start;
-                float total;
-                PRBG prbg;
-                int cs_size;
-                XYSeries series_icX;
-                String pwd;
-                String cs;
-
-                // Conditions
-                int min_cs_size = 1;
-                int max_cs_size = 4;
+                int trials = Integer.parseInt(cmds.getOptionValue("trials", "5"));
+                int warmup = Integer.parseInt(cmds.getOptionValue("warmup", "2"));
+                int max_cs_size = Integer.parseInt(cmds.getOptionValue("maxcs", "4"));
                 int[] ic_counts = {1, 5, 10, 20, 50, 100, 200};
+                if (cmds.hasOption("ics"))
+                    ic_counts = Arrays.stream(cmds.getOptionValue("ics").split(",")).mapToInt(Integer::parseInt).toArray();
+                int max_concurrency = Integer.parseInt(cmds.getOptionValue("sweep",
+                        String.valueOf(Runtime.getRuntime().availableProcessors())));
 
-                // Time elapsed for each confusion string size, comparing multiple iteration counts
-
-                // Collection of icX series
-                XYSeriesCollection t_per_cs_icX = new XYSeriesCollection();
-
-                for (int ic_count : ic_counts) {
-
-                    // Series for this iteration count
-                    series_icX = new XYSeries(String.format("ic=%d", ic_count));
-
-                    for (cs_size = min_cs_size; cs_size <= max_cs_size; cs_size++) {
-
-                        // Generator init
-                        pwd = Utils.randomString(10);
-                        cs = Utils.randomString(cs_size);
-                        prbg = new PRBG(pwd, cs, ic_count);
+                MacroBenchmark benchmark = new MacroBenchmark(trials, warmup, max_cs_size, ic_counts, max_concurrency);
+                List<MacroBenchmark.Cell> grid = benchmark.run_grid(System.out);
+                List<MacroBenchmark.Cell> sweep = benchmark.run_sweep(System.out);
 
-                        // Count setup time
-                        start = System.currentTimeMillis();
-                        prbg.setup();
-                        total = (System.currentTimeMillis() - start) / 1000F;
-
-                        // Save data for later plot
-                        series_icX.add(cs_size, total);
+                // Results files
+                SimpleDateFormat formatter= new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
+                String date = formatter.format(new Date(System.currentTimeMillis()));
+                List<MacroBenchmark.Cell> cells = new ArrayList<>(grid);
+                cells.addAll(sweep);
+                MacroBenchmark.write_csv(cells, Paths.get(String.format("bmk-%s.csv", date)));
+                MacroBenchmark.write_json(cells, Paths.get(String.format("bmk-%s.json", date)));
 
-                        // Save time to times file
-                        writer.write(String.format("cs_size=%d\tic=%d\ttime=%f\n", cs_size, ic_count, total));
+                // Median time for each confusion string size, comparing multiple iteration counts
+                XYSeriesCollection t_per_cs_icX = new XYSeriesCollection();
+                XYSeries series_icX = null;
+                for (MacroBenchmark.Cell cell : grid) {
+                    // The grid holds every confusion string size for an iteration count, then the next one
+                    if (cell.cs_size == 1) {
+                        series_icX = new XYSeries(String.format("ic=%d", cell.iteration_count));
+                        t_per_cs_icX.addSeries(series_icX);
                     }
-
-                    // Save this icX series to Collection
-                    t_per_cs_icX.addSeries(series_icX);
-
+                    series_icX.add(cell.cs_size, cell.latency.percentile(50) / 1e9);
                 }
 
-                // Close times file
-                Date end_date = new Date(System.currentTimeMillis());
-                writer.write(String.format("\n\nFinished. %s", formatter.format(end_date)));
-                writer.close();
-
                 // Make and save scatter plot
                 JFreeChart scatterPlot = ChartFactory.createScatterPlot(
-                        "Time per confusion string size, for each iteration count",
+                        "Median time per confusion string size, for each iteration count",
                         "Confusion string size",
                         "Time (seconds)",
                         t_per_cs_icX
                 );
                 ChartUtils.saveChartAsPNG(new File("t_per_cs_icX.png"), scatterPlot, 600, 400);
 
+                // Throughput per number of concurrent setups
+                XYSeries series_sweep = new XYSeries(String.format("cs_size=%d, ic=%d", MacroBenchmark.SWEEP_CS_SIZE, MacroBenchmark.SWEEP_IC));
+                for (MacroBenchmark.Cell cell : sweep)
+                    series_sweep.add(cell.concurrency, cell.setups_per_second);
+                XYSeriesCollection setups_per_thread = new XYSeriesCollection();
+                setups_per_thread.addSeries(series_sweep);
+                JFreeChart linePlot = ChartFactory.createXYLineChart(
+                        "Setups per second, for each number of threads",
+                        "Threads",
+                        "Setups per second",
+                        setups_per_thread
+                );
+                ChartUtils.saveChartAsPNG(new File("setups_per_thread.png"), linePlot, 600, 400);
+
             }
         } catch (ParseException e) {
             System.err.println("Error parsing command line options");
@@ -193,4 +318,73 @@ public class randgen {
         }
 
     }
+
+    /** Writes the next nob bytes of the generator to the given channel, in blocks of BLOCK_SIZE
+     * bytes, and reports the throughput to stderr. If nob {@literal <} 1, bytes are written until
+     * the channel is closed by the reader.
+     * @param prbg A generator that has already been setted up
+     * @param nob Number of bytes to output
+     * @param channel Destination of the bytes
+     */
+    static void write_bytes(PRBG prbg, long nob, WritableByteChannel channel) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        long written = 0;
+        long start = System.nanoTime();
+        try {
+            while (nob < 1 || written < nob) {
+                block.clear();
+                if (nob >= 1)
+                    block.limit((int) Math.min(BLOCK_SIZE, nob - written));
+                prbg.next_bytes(block);
+                block.flip();
+                while (block.hasRemaining())
+                    channel.write(block);
+                written += block.limit();
+            }
+        } catch (IOException e) {
+            // The reader of an infinite stream went away
+            if (nob >= 1)
+                throw e;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d bytes written in %.3f s (%.2f MB/s)%n",
+                written, seconds, written / 1e6 / Math.max(seconds, 1e-9));
+    }
+
+    /** Writes the next nob bytes of the generator to the given file, which is sized up front (as a
+     * sparse file) and filled through memory-mapped windows of MAP_WINDOW bytes, each one forced to
+     * the file once filled. Reports the throughput to stderr. The bytes are the same as with write_bytes().
+     * @param prbg A generator that has already been setted up
+     * @param nob Number of bytes to output (at least 1)
+     * @param path Destination file, replaced if it exists
+     */
+    static void write_file(PRBG prbg, long nob, Path path) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Sizing the file first so that every window falls inside it. This does not allocate the
+            // blocks: the file stays sparse until each window is written
+            channel.write(ByteBuffer.allocate(1), nob - 1);
+            for (long offset = 0; offset < nob; offset += MAP_WINDOW)
+                fill_window(prbg, channel, offset, Math.min(MAP_WINDOW, nob - offset), block);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d bytes written to %s in %.3f s (%.2f GB/s)%n",
+                nob, path, seconds, nob / 1e9 / Math.max(seconds, 1e-9));
+    }
+
+    /** Maps one window of the file, fills it with the next bytes of the generator and forces it to
+     * the file. The mapping is only referenced here, so that it can be unmapped by the garbage
+     * collector once the window is done, instead of every window staying mapped until the end.
+     */
+    private static void fill_window(PRBG prbg, FileChannel channel, long offset, long size, byte[] block) throws IOException {
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+        while (window.hasRemaining()) {
+            int len = Math.min(block.length, window.remaining());
+            prbg.next_bytes(block, 0, len);
+            window.put(block, 0, len);
+        }
+        window.force();
+    }
 }
\ No newline at end of file
@@ -1,58 +1,108 @@
 package drsa;
 
-// External libs for command line parsing and PEM write
+// External lib for command line parsing
 import org.apache.commons.cli.*;
-import org.bouncycastle.asn1.ASN1Encodable;
-import org.bouncycastle.asn1.ASN1Primitive;
-import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
-import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
-import org.bouncycastle.util.io.pem.PemObject;
-import org.bouncycastle.util.io.pem.PemWriter;
+import drsa.events.PemEncodeEvent;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.math.BigInteger;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.RSAPrivateKeySpec;
-import java.security.spec.RSAPublicKeySpec;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This application implements the drsa.DRSA module (drsa.DRSA).
  * It receives the first N pseudo-random bytes from the stdin (with a limit of
  * 1M bytes) which are used to generate deterministic private and public parameters
  * for an RSA key, using the drsa.DRSA module.
- * The parameters are then used to convert the key pair to the PEM format,
- * using an external library (bouncycastle). The keys are then exported to a file with the
- * given name.
+ * The parameters are then used to convert the key pair to the PKCS#1 PEM format
+ * (see drsa.Pkcs1Encoder). The keys are then exported to a file with the given name.
+ * With -bits, the whole stdin is hashed instead (see drsa.SeedExpander) into the seed bytes of a key
+ * of exactly the given size, so that the time and memory used do not depend on the input size.
+ * With -ks, the key pair is added to a keystore file instead (see drsa.KeyStoreWriter).
  */
 public class rsagen {
+
+    /**
+     * Maximum number of seed bytes read from stdin.
+     */
+    static final int MAX_SEED_BYTES = 1000000;
+
     public static void main(String[] args) throws IOException, IllegalBlockSizeException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeySpecException, BadPaddingException, InvalidKeyException {
 
         // Parse command line options
         Options options = new Options();
         Option opt_kn = Option.builder("kn")
                 .argName("Key name")
-                .required(true)
+                .required(false)
                 .longOpt("key_name")
                 .desc("Name for the generated key (textual)")
                 .hasArg()
                 .build();
+        Option opt_par = Option.builder("par")
+                .argName("Parallel")
+                .longOpt("parallel")
+                .desc("Search p and q concurrently on the common fork-join pool")
+                .build();
+        Option opt_batch = Option.builder("batch")
+                .argName("Seeds file")
+                .longOpt("batch")
+                .desc("Derive a key pair for each (key name, seed) record of the given file, or of stdin if '-'")
+                .hasArg()
+                .build();
+        Option opt_threads = Option.builder("threads")
+                .argName("Threads")
+                .longOpt("threads")
+                .desc("Number of workers in batch mode (number, defaults to the number of cores)")
+                .hasArg()
+                .build();
+        Option opt_bits = Option.builder("bits")
+                .argName("Modulus bits")
+                .longOpt("bits")
+                .desc("Size of the key; stdin is then hashed into exactly the seed bytes this size needs, whatever its length (number, optional)")
+                .hasArg()
+                .build();
+        Option opt_primes = Option.builder("primes")
+                .argName("Number of primes")
+                .longOpt("primes")
+                .desc("Number of primes of the modulus, for a multi-prime key with -bits (number, optional, default 2)")
+                .hasArg()
+                .build();
+        Option opt_ks = Option.builder("ks")
+                .argName("Keystore file")
+                .longOpt("keystore")
+                .desc("Add the key pair to this keystore file under the key name, instead of writing PEM files (optional)")
+                .hasArg()
+                .build();
         options.addOption(opt_kn);
+        options.addOption(opt_par);
+        options.addOption(opt_batch);
+        options.addOption(opt_threads);
+        options.addOption(opt_bits);
+        options.addOption(opt_primes);
+        options.addOption(opt_ks);
         CommandLineParser parser = new DefaultParser();
 
         // Default output key name
         String kn = "key";
+        boolean parallel = false;
+        String batch = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int bits = 0;
+        int primes = 2;
+        String ks = null;
 
         try {
             CommandLine cmds = parser.parse(options, args, true);
@@ -60,6 +110,21 @@ public class rsagen {
             if (cmds.hasOption("kn")) {
                 kn = cmds.getOptionValue("kn");
             }
+            parallel = cmds.hasOption("par");
+            batch = cmds.getOptionValue("batch");
+            if (cmds.hasOption("threads"))
+                threads = Integer.parseInt(cmds.getOptionValue("threads"));
+            if (cmds.hasOption("bits"))
+                bits = Integer.parseInt(cmds.getOptionValue("bits"));
+            if (cmds.hasOption("primes"))
+                primes = Integer.parseInt(cmds.getOptionValue("primes"));
+            ks = cmds.getOptionValue("ks");
+            // Each record of a batch has its own name, and its own seed that sets the key size
+            if (batch != null && (cmds.hasOption("kn") || cmds.hasOption("par") || cmds.hasOption("bits")
+                    || cmds.hasOption("primes"))) {
+                System.err.println("-batch cannot be combined with -kn, -par, -bits or -primes");
+                System.exit(1);
+            }
 
         } catch (ParseException e) {
             System.err.println("Error parsing command line options");
@@ -67,78 +132,130 @@ public class rsagen {
             System.exit(1);
         }
 
-        // Read seed from stdin
-        ByteBuffer buf = ByteBuffer.allocate(1000000); // 1M bytes max
-        ReadableByteChannel channel = Channels.newChannel(System.in);
-        while (channel.read(buf) >= 0)
-            ;
-        buf.flip();
-        byte[] seed = Arrays.copyOf(buf.array(), buf.limit());
-
-        // Initialize drsa.DRSA with specified seed
-        DRSA drsa = new DRSA(seed);
-
-        // Retrieve RSA parameters
-        Map<String, BigInteger> private_params = drsa.get_private_params();
-        Map<String, BigInteger> public_params = drsa.get_public_params();
-        BigInteger d = private_params.get("d");
-        BigInteger p = private_params.get("p");
-        BigInteger q = private_params.get("q");
-        BigInteger n = public_params.get("n");
-        BigInteger e = public_params.get("e");
-
-        /// PRIVATE KEY ///
-
-        // Create private key spec from parameters
-        RSAPrivateKeySpec rsa_priv_spec = new RSAPrivateKeySpec(n, d);
-
-        // Convert to PKCS#1
-        KeyFactory factory = KeyFactory.getInstance("RSA");
-        PrivateKey priv = factory.generatePrivate(rsa_priv_spec);
-        byte[] privBytes = priv.getEncoded();
-        PrivateKeyInfo pkInfo = PrivateKeyInfo.getInstance(privBytes);
-        ASN1Encodable encodable = pkInfo.parsePrivateKey();
-        ASN1Primitive primitive_priv = encodable.toASN1Primitive();
-        byte[] privateKeyPKCS1 = primitive_priv.getEncoded();
-
-        // Convert to PEM
-        PemObject pemObject = new PemObject("RSA PRIVATE KEY", privateKeyPKCS1);
-        StringWriter stringWriter = new StringWriter();
-        PemWriter pemWriter = new PemWriter(stringWriter);
-        pemWriter.writeObject(pemObject);
-        pemWriter.close();
-        String pemString_priv = stringWriter.toString();
+        if (batch != null) {
+            run_batch(batch, threads, ks);
+            return;
+        }
 
-        // Write to file
-        BufferedWriter writer = new BufferedWriter(new FileWriter(String.format("%s_priv_key.pem", kn)));
-        writer.write(pemString_priv);
-        writer.close();
-        System.out.printf("Private key saved to %s_priv_key.pem.%n", kn);
+        if (primes != 2 && bits == 0) {
+            System.err.println("A multi-prime key needs -bits");
+            System.exit(1);
+        }
 
-        /// PUBLIC KEY ///
+        DRSA drsa;
+        if (bits > 0) {
+            try {
+                DRSA.check_modulus_bits(bits, primes);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
 
-        // Create public key spec from parameters
-        RSAPublicKeySpec rsa_pub_spec = new RSAPublicKeySpec(n, e);
+            // Hash stdin into the seed bytes of a key of the given size
+            byte[] seed = SeedExpander.expand(System.in, DRSA.seed_bytes(bits, primes));
+            drsa = new DRSA(seed, bits, primes, parallel ? ForkJoinPool.commonPool() : null, DRSA.default_prime_search);
+        } else {
+            // Read seed from stdin
+            ByteBuffer buf = ByteBuffer.allocate(MAX_SEED_BYTES); // 1M bytes max
+            ReadableByteChannel channel = Channels.newChannel(System.in);
+            while (channel.read(buf) >= 0)
+                ;
+            buf.flip();
+            byte[] seed = Arrays.copyOf(buf.array(), buf.limit());
 
-        // Convert to PKCS#1
-        PublicKey pub = factory.generatePublic(rsa_pub_spec);
-        byte[] pubBytes = pub.getEncoded();
-        SubjectPublicKeyInfo spkInfo = SubjectPublicKeyInfo.getInstance(pubBytes);
-        ASN1Primitive primitive_pub = spkInfo.parsePublicKey();
-        byte[] publicKeyPKCS1 = primitive_pub.getEncoded();
+            // Initialize drsa.DRSA with specified seed
+            drsa = new DRSA(seed, parallel ? ForkJoinPool.commonPool() : null);
+        }
+
+        if (ks != null) {
+            KeyStoreWriter store = new KeyStoreWriter(Paths.get(ks));
+            try {
+                store.put(kn, drsa);
+            } catch (IllegalArgumentException e) {
+                store.close();
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+            store.close();
+            System.out.printf("Key pair %s saved to %s.%n", kn, ks);
+            return;
+        }
+
+        // Encode the key pair
+        String pemString_priv = private_key_pem(drsa);
+        String pemString_pub = public_key_pem(drsa);
 
-        // Convert to PEM
-        PemObject pemObject_pub = new PemObject("RSA PUBLIC KEY", publicKeyPKCS1);
-        StringWriter stringWriter_pub = new StringWriter();
-        PemWriter pemWriter_pub = new PemWriter(stringWriter_pub);
-        pemWriter_pub.writeObject(pemObject_pub);
-        pemWriter_pub.close();
-        String pemString_pub = stringWriter_pub.toString();
+        // Write to file
+        Files.write(Paths.get(String.format("%s_priv_key.pem", kn)), pemString_priv.getBytes(StandardCharsets.US_ASCII));
+        System.out.printf("Private key saved to %s_priv_key.pem.%n", kn);
 
         // Write to file
-        BufferedWriter writer_pub = new BufferedWriter(new FileWriter(String.format("%s_pub_key.pem", kn)));
-        writer_pub.write(pemString_pub);
-        writer_pub.close();
+        Files.write(Paths.get(String.format("%s_pub_key.pem", kn)), pemString_pub.getBytes(StandardCharsets.US_ASCII));
         System.out.printf("Public key saved to %s_pub_key.pem.%n", kn);
     }
+
+    /** Runs the batch mode (see drsa.KeyBatch) and reports the number of keys per second.
+     * @param batch Path of the seeds file, or '-' for stdin
+     * @param threads Number of workers
+     * @param ks Path of the keystore where the keys are added, or null for PEM files
+     */
+    static void run_batch(String batch, int threads, String ks) throws IOException {
+        InputStream in = batch.equals("-") ? System.in : new FileInputStream(batch);
+        long start = System.nanoTime();
+        long keys;
+        KeyStoreWriter store = ks != null ? new KeyStoreWriter(Paths.get(ks)) : null;
+        try (InputStream buffered = new BufferedInputStream(in)) {
+            keys = new KeyBatch(threads, store).run(buffered);
+        } catch (Exception e) {
+            // Keep the keys added before the error
+            if (store != null)
+                store.close();
+            System.err.println("Error in batch mode");
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (store != null)
+            store.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d key pairs saved in %.3f s (%.2f keys/s, %d threads).%n",
+                keys, seconds, keys / Math.max(seconds, 1e-9), threads);
+    }
+
+    /** Encodes the private key of the given drsa.DRSA instance in the PKCS#1 PEM format,
+     * including the CRT parameters.
+     * @param drsa A drsa.DRSA instance
+     * @return The PEM encoded private key
+     */
+    public static String private_key_pem(DRSA drsa) {
+        PemEncodeEvent event = new PemEncodeEvent();
+        event.begin();
+        String pem = drsa.get_private_key_pem();
+        commit_pem(event, "private", drsa, pem);
+        return pem;
+    }
+
+    /** Encodes the public key of the given drsa.DRSA instance in the PKCS#1 PEM format.
+     * @param drsa A drsa.DRSA instance
+     * @return The PEM encoded public key
+     */
+    public static String public_key_pem(DRSA drsa) {
+        PemEncodeEvent event = new PemEncodeEvent();
+        event.begin();
+        String pem = drsa.get_public_key_pem();
+        commit_pem(event, "public", drsa, pem);
+        return pem;
+    }
+
+    /** Ends the given PEM event, and commits it if it is recorded.
+     */
+    private static void commit_pem(PemEncodeEvent event, String key_type, DRSA drsa, String pem) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.key_type = key_type;
+            event.modulus_bits = drsa.get_public_params().get("n").bitLength();
+            event.pem_bytes = pem.length();
+            event.commit();
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package drsa.utils;
+
+/**
+ * Allocation-free sliding window that holds the last N bytes produced by the generator and
+ * compares them with a fixed pattern. Up to 8 bytes, the window is a single long register
+ * shifted by one byte at each step, so a match is one mask and one comparison. Longer patterns
+ * keep the last 8 bytes in the register as a quick reject and the remaining bytes in a ring.
+ */
+public class RollingPattern {
+
+    private final int size;
+    private final int[] pattern;
+
+    /**
+     * The last min(size, 8) bytes of the pattern and of the window, packed with the most
+     * recent byte in the lowest 8 bits.
+     */
+    private final long packed_pattern;
+    private final long mask;
+    private long window;
+
+    /**
+     * Ring with the full window, only used when the pattern is longer than 8 bytes.
+     */
+    private final int[] ring;
+    private int head;
+    private int filled;
+
+    /**
+     * @param pattern The bytes (0-255) to search for, oldest first
+     */
+    public RollingPattern(int[] pattern) {
+        this.size = pattern.length;
+        this.pattern = pattern.clone();
+        int packed_size = Math.min(this.size, 8);
+        this.mask = packed_size == 8 ? -1L : (1L << (8 * packed_size)) - 1;
+        this.packed_pattern = pack(this.pattern, this.size - packed_size, this.size);
+        this.ring = this.size > 8 ? new int[this.size] : null;
+        this.head = 0;
+        this.window = 0;
+        this.filled = 0;
+    }
+
+    /** Packs pattern[from, to) into a long, with pattern[to - 1] in the lowest 8 bits.
+     */
+    private static long pack(int[] pattern, int from, int to) {
+        long packed = 0;
+        for (int i = from; i < to; i++)
+            packed = (packed << 8) | (pattern[i] & 0xFF);
+        return packed;
+    }
+
+    /** Adds the given byte to the end of the window, dropping the oldest one if the window is full,
+     * and checks the window against the pattern.
+     * @param b A long representation of a byte (0-255)
+     * @return True if the window is full and equal to the pattern
+     */
+    public boolean push(long b) {
+        this.window = (this.window << 8) | (b & 0xFF);
+        if (this.filled < this.size)
+            this.filled++;
+        if (this.ring != null) {
+            this.ring[this.head] = (int) (b & 0xFF);
+            this.head = this.head + 1 == this.size ? 0 : this.head + 1;
+        }
+        if (((this.window ^ this.packed_pattern) & this.mask) != 0 || this.filled < this.size)
+            return false;
+        return this.ring == null || ringMatches();
+    }
+
+    /** Compares the whole ring with the pattern. The oldest byte sits at the current head.
+     */
+    private boolean ringMatches() {
+        int j = this.head;
+        for (int i = 0; i < this.size; i++) {
+            if (this.ring[j] != this.pattern[i]) return false;
+            j = j + 1 == this.size ? 0 : j + 1;
+        }
+        return true;
+    }
+
+    /** Retrieves the bytes currently held by the window.
+     * @return Up to size bytes (0-255), oldest first
+     */
+    public int[] getContents() {
+        int[] contents = new int[this.filled];
+        if (this.ring != null) {
+            for (int i = 0; i < this.filled; i++)
+                contents[i] = this.ring[Math.floorMod(this.head - this.filled + i, this.size)];
+        } else {
+            for (int i = 0; i < this.filled; i++)
+                contents[i] = (int) (this.window >>> (8 * (this.filled - 1 - i))) & 0xFF;
+        }
+        return contents;
+    }
+
+    /** Replaces the window with the given bytes, as if they had been the last ones added.
+     * @param contents Up to size bytes (0-255), oldest first
+     */
+    public void restore(int[] contents) {
+        if (contents.length > this.size)
+            throw new IllegalArgumentException("More than " + this.size + " bytes");
+        this.clear();
+        for (int b : contents)
+            this.push(b);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void clear() {
+        this.window = 0;
+        this.filled = 0;
+        this.head = 0;
+    }
+}
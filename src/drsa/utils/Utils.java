@@ -1,6 +1,7 @@
 package drsa.utils;
 
 import java.security.SecureRandom;
+import java.util.Random;
 
 
 /**
@@ -18,9 +19,19 @@ public class Utils {
      * @return A string with the given length.
      */
     public static String randomString(int len){
+        return randomString(len, rnd);
+    }
+
+    /** Same as randomString(int), with the given source of randomness, e.g. a seeded
+     * java.util.Random to get the same strings on every run.
+     * @param len Desired string length.
+     * @param random Source of randomness.
+     * @return A string with the given length.
+     */
+    public static String randomString(int len, Random random){
         StringBuilder sb = new StringBuilder(len);
         for(int i = 0; i < len; i++)
-            sb.append(AB.charAt(rnd.nextInt(AB.length())));
+            sb.append(AB.charAt(random.nextInt(AB.length())));
         return sb.toString();
     }
 }
\ No newline at end of file